@@ -0,0 +1,75 @@
+package de.fhg.fokus.edp.similarity_service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fingerprint comparisons per second of a sequential scan, per distance kernel and scan engine.
+ * Every invocation scans all candidates for one query, or for a batch of queries at once.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class DistanceBenchmark {
+
+    private static final int CANDIDATES = 1_000_000;
+    private static final int BATCH = 64;
+
+    @Param({"table", "swar"})
+    public String kernel;
+
+    @Param({"scalar", "batch"})
+    public String engine;
+
+    @Param({"30"})
+    public int maxDistance;
+
+    private FingerprintIndex index;
+    private DistanceKernel distanceKernel;
+    private ScanEngine scanEngine;
+    private FingerprintQuery[] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        index = SyntheticDatasets.fingerprints(CANDIDATES, 42);
+        distanceKernel = DistanceKernel.valueOf(kernel.toUpperCase());
+        scanEngine = ScanEngine.valueOf(engine.toUpperCase());
+
+        queries = new FingerprintQuery[BATCH];
+        for (int i = 0; i < BATCH; i++)
+            queries[i] = new FingerprintQuery(index, i * (CANDIDATES / BATCH), 0, maxDistance, 10);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CANDIDATES)
+    public HitList scan() {
+        FingerprintQuery query = queries[next];
+        next = (next + 1) % BATCH;
+
+        HitList hits = new HitList(query.getLimit());
+        scanEngine.scan(index, 0, index.size(), query, distanceKernel, hits);
+        return hits;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CANDIDATES * BATCH)
+    public HitList[] scanBatch() {
+        HitList[] hits = new HitList[BATCH];
+        for (int i = 0; i < BATCH; i++)
+            hits[i] = new HitList(queries[i].getLimit());
+
+        scanEngine.scan(index, 0, index.size(), queries, distanceKernel, hits);
+        return hits;
+    }
+}
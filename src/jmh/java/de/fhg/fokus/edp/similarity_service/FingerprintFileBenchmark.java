@@ -0,0 +1,79 @@
+package de.fhg.fokus.edp.similarity_service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records per second read from a binary fingerprint file of one million datasets, and loaded into a
+ * segment with its secondary index as SimilarityVerticle does on every change of the file.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FingerprintFileBenchmark {
+
+    private static final int RECORDS = 1_000_000;
+
+    private Path directory;
+    private Path file;
+
+    /**
+     * Secondary index to build on load; reading does not depend on it.
+     */
+    @State(Scope.Benchmark)
+    public static class SearchIndex {
+        @Param({"scan", "chunk8", "bktree"})
+        public String name;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("fingerprint-benchmark");
+        file = directory.resolve("catalogue.fp");
+
+        FingerprintIndex fingerprints = SyntheticDatasets.fingerprints(RECORDS, 42);
+        try (FingerprintFile.Appender appender = FingerprintFile.appender(file)) {
+            for (int ordinal = 0; ordinal < fingerprints.size(); ordinal++)
+                appender.append(fingerprints.uri(ordinal), fingerprints.hi(ordinal), fingerprints.lo(ordinal), fingerprints.length(ordinal));
+        }
+        FingerprintFile.assemble(file);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FingerprintFile.discard(file);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public long read() throws IOException {
+        long[] checksum = new long[1];
+        FingerprintFile.read(file, (uri, hi, lo, textLength) -> checksum[0] += hi ^ lo ^ textLength ^ uri.length());
+        return checksum[0];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public IndexSegment load(SearchIndex index) throws IOException {
+        FingerprintIndex fingerprints = new FingerprintIndex();
+        FingerprintFile.read(file, fingerprints::put);
+        return IndexSegment.build(file, fingerprints, SyntheticDatasets.neighbourIndex(index.name));
+    }
+}
@@ -0,0 +1,110 @@
+package de.fhg.fokus.edp.similarity_service;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency and recall of the secondary indexes against a brute-force scan of one segment.
+ * <p>
+ * The expected hits of every query are computed by a scan beforehand; the counter <code>found</code>
+ * adds up the hits reported that the scan reports as well, at the same distance, and <code>expected</code>
+ * those the scan reports, so that their ratio is the recall. Queries an index does not support are
+ * answered by a scan, as in the service.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class NeighbourIndexBenchmark {
+
+    private static final int QUERIES = 1024;
+
+    @Param({"1000000"})
+    public int size;
+
+    @Param({"scan", "chunk8", "chunk16", "bktree"})
+    public String index;
+
+    @Param({"3", "7", "15"})
+    public int maxDistance;
+
+    @Param({"10"})
+    public int limit;
+
+    private IndexSegment segment;
+    private SnapshotSearch search;
+    private FingerprintQuery[] queries;
+    private HitList[] expected;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Recall {
+        public long found;
+        public long expected;
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        FingerprintIndex fingerprints = SyntheticDatasets.fingerprints(size, 42);
+        segment = IndexSegment.build(Paths.get("segment.fp"), fingerprints, SyntheticDatasets.neighbourIndex(index));
+        search = new SnapshotSearch(DistanceKernel.SWAR, ScanEngine.SCALAR, new ParallelScan(1, ApplicationConfig.DEFAULT_SCAN_SHARD_SIZE));
+
+        SplittableRandom random = new SplittableRandom(7);
+        queries = new FingerprintQuery[QUERIES];
+        expected = new HitList[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = new FingerprintQuery(fingerprints, random.nextInt(size), 0, maxDistance, limit);
+
+            expected[i] = new HitList(limit);
+            ScanEngine.SCALAR.scan(fingerprints, 0, size, queries[i], DistanceKernel.SWAR, expected[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        search.shutdown();
+    }
+
+    @Benchmark
+    public HitList search(Recall recall) {
+        int i = recall.next;
+        recall.next = (i + 1) % QUERIES;
+
+        HitList hits = search.searchSegment(segment, queries[i]);
+        recall.found += matches(hits, expected[i]);
+        recall.expected += expected[i].size();
+        return hits;
+    }
+
+    /**
+     * @return Number of hits that are among the expected ones, with the same distance.
+     */
+    private static int matches(HitList hits, HitList expected) {
+        int matches = 0;
+        for (int i = 0; i < hits.size(); i++) {
+            for (int j = 0; j < expected.size(); j++) {
+                if (hits.ordinal(i) == expected.ordinal(j)) {
+                    if (hits.distance(i) == expected.distance(j))
+                        matches++;
+                    break;
+                }
+            }
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,104 @@
+package de.fhg.fokus.edp.similarity_service;
+
+import io.vertx.core.buffer.Buffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a similarity query from dataset URI to encoded response, as SimilarityVerticle answers it
+ * without cache and graph: finding the dataset, searching every segment and encoding the hits.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class QueryBenchmark {
+
+    private static final int SEGMENT_SIZE = 100_000;
+    private static final int QUERIES = 1024;
+
+    @Param({"100000", "1000000", "5000000"})
+    public int size;
+
+    @Param({"scan", "chunk8", "bktree"})
+    public String index;
+
+    @Param({"5", "40"})
+    public int maxDistance;
+
+    @Param({"10"})
+    public int limit;
+
+    @Param({"1"})
+    public int parallelism;
+
+    private IndexSnapshot snapshot;
+    private SnapshotSearch search;
+    private String[] datasetUris;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        snapshot = SyntheticDatasets.snapshot(size, SEGMENT_SIZE, 42, index);
+        search = new SnapshotSearch(DistanceKernel.SWAR, ScanEngine.SCALAR, new ParallelScan(parallelism, ApplicationConfig.DEFAULT_SCAN_SHARD_SIZE));
+
+        SplittableRandom random = new SplittableRandom(7);
+        datasetUris = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++)
+            datasetUris[i] = snapshot.uri(random.nextInt(size));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        search.shutdown();
+    }
+
+    @Benchmark
+    public Buffer query(Cursor cursor) {
+        String datasetUri = datasetUris[cursor.next];
+        cursor.next = (cursor.next + 1) % QUERIES;
+
+        FingerprintQuery query = findQuery(datasetUri);
+        HitList hits = search.search(snapshot, new FingerprintQuery[]{query}, new String[]{datasetUri})[0];
+
+        SimilarityJson similarities = new SimilarityJson(limit);
+        Set<String> reported = new HashSet<>();
+        for (int i = 0; i < hits.size() && similarities.size() < limit; i++) {
+            String uri = snapshot.uri(hits.ordinal(i));
+            if (reported.add(uri))
+                similarities.add(uri, hits.distance(i));
+        }
+
+        return similarities.end();
+    }
+
+    private FingerprintQuery findQuery(String datasetUri) {
+        for (int segment = 0; segment < snapshot.segmentCount(); segment++) {
+            FingerprintIndex fingerprints = snapshot.segment(segment).fingerprints();
+            int ordinal = fingerprints.ordinalOf(datasetUri);
+
+            if (ordinal >= 0)
+                return new FingerprintQuery(fingerprints, ordinal, 0, maxDistance, limit);
+        }
+
+        throw new IllegalStateException("Unknown dataset " + datasetUri);
+    }
+}
@@ -0,0 +1,197 @@
+package de.fhg.fokus.edp.similarity_service;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic synthetic datasets for the benchmarks, the same for the same seed.
+ * <p>
+ * Texts resemble catalogue metadata of the portal: titles of a few words with numbers and years,
+ * descriptions of a few sentences up to long paragraphs, in one of several languages with their
+ * diacritics, Greek and Cyrillic script, punctuation and the stop words the normalizer removes.
+ * <p>
+ * Fingerprints come in clusters of related datasets, as series and translations of the same data
+ * do, with the remaining datasets far apart, so that searches find a handful of close hits.
+ */
+final class SyntheticDatasets {
+
+    static final String URI_PREFIX = "https://europeandataportal.eu/set/data/synthetic-";
+
+    private static final String[][] WORDS = {
+        // English
+        {"population", "census", "water", "quality", "road", "traffic", "budget", "school", "energy", "air",
+            "noise", "health", "forest", "river", "station", "the", "of", "and", "is", "annual", "monitoring",
+            "municipality", "register", "statistics", "emissions", "transport", "public", "data", "survey"},
+        // German
+        {"Bevölkerung", "Straßenverkehr", "Haushalt", "Schule", "Energieverbrauch", "Luftqualität", "Lärm",
+            "Gesundheit", "Wald", "Fluss", "Messstation", "der", "die", "und", "jährlich", "Gemeinde", "Größe",
+            "Übersicht", "Förderung", "Gewässer"},
+        // French
+        {"population", "recensement", "qualité", "eau", "routière", "budget", "école", "énergie", "bruit",
+            "santé", "forêt", "rivière", "la", "de", "et", "données", "publiques", "région", "élevé", "année"},
+        // Polish
+        {"ludność", "spis", "jakość", "wody", "ruch", "drogowy", "budżet", "szkoła", "energia", "hałas",
+            "zdrowie", "las", "rzeka", "stacja", "gmina", "województwo", "źródło", "łączna", "średnia"},
+        // Greek
+        {"πληθυσμός", "απογραφή", "ποιότητα", "νερού", "κυκλοφορία", "προϋπολογισμός", "σχολείο", "ενέργεια",
+            "θόρυβος", "υγεία", "δάσος", "ποταμός", "σταθμός", "δήμος", "ετήσια", "στοιχεία"},
+        // Bulgarian
+        {"население", "преброяване", "качество", "вода", "движение", "бюджет", "училище", "енергия", "шум",
+            "здраве", "гора", "река", "станция", "община", "годишни", "данни"},
+        // Spanish
+        {"población", "censo", "calidad", "agua", "tráfico", "presupuesto", "escuela", "energía", "ruido",
+            "salud", "bosque", "río", "estación", "municipio", "año", "y", "de", "la", "información"}
+    };
+
+    private static final String[] PUNCTUATION = {", ", ". ", "; ", " - ", " (", ") ", ": ", " / ", "\" "};
+
+    private SyntheticDatasets() {
+    }
+
+    /**
+     * Titles and descriptions of datasets.
+     */
+    static final class Texts {
+        final String[] titles;
+        final String[] descriptions;
+
+        private Texts(int count) {
+            titles = new String[count];
+            descriptions = new String[count];
+        }
+
+        int size() {
+            return titles.length;
+        }
+    }
+
+    static Texts texts(int count, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        Texts texts = new Texts(count);
+
+        for (int i = 0; i < count; i++) {
+            String[] words = WORDS[random.nextInt(WORDS.length)];
+
+            StringBuilder title = new StringBuilder();
+            appendWords(title, words, 3 + random.nextInt(10), random);
+            if (random.nextInt(3) == 0)
+                title.append(' ').append(1990 + random.nextInt(35));
+            texts.titles[i] = title.toString();
+
+            // mostly short descriptions, some long ones: 10 to about 400 words
+            int length = 10 + (int) (390 * Math.pow(random.nextDouble(), 3));
+            StringBuilder description = new StringBuilder();
+            appendWords(description, words, length, random);
+            texts.descriptions[i] = description.toString();
+        }
+
+        return texts;
+    }
+
+    private static void appendWords(StringBuilder text, String[] words, int count, SplittableRandom random) {
+        for (int w = 0; w < count; w++) {
+            if (w > 0)
+                text.append(random.nextInt(8) == 0 ? PUNCTUATION[random.nextInt(PUNCTUATION.length)] : " ");
+            String word = words[random.nextInt(words.length)];
+            text.append(random.nextInt(10) == 0 ? word.toUpperCase() : word);
+            if (random.nextInt(20) == 0)
+                text.append(' ').append(random.nextInt(10000));
+        }
+    }
+
+    /**
+     * @return Index of <code>count</code> fingerprints.
+     */
+    static FingerprintIndex fingerprints(int count, long seed) {
+        Fingerprints fingerprints = new Fingerprints(seed);
+        FingerprintIndex index = new FingerprintIndex();
+        for (int i = 0; i < count; i++)
+            fingerprints.putNext(index);
+        return index;
+    }
+
+    /**
+     * @param segmentSize Number of datasets per segment, as a large catalogue would hold them.
+     * @param searchIndex Secondary index of every segment, see {@link #neighbourIndex(String)}.
+     * @return Snapshot of <code>count</code> fingerprints in segments of <code>segmentSize</code>.
+     */
+    static IndexSnapshot snapshot(int count, int segmentSize, long seed, String searchIndex) {
+        Fingerprints fingerprints = new Fingerprints(seed);
+        List<IndexSegment> segments = new ArrayList<>();
+
+        for (int from = 0; from < count; from += segmentSize) {
+            FingerprintIndex segment = new FingerprintIndex();
+            for (int i = from; i < Math.min(count, from + segmentSize); i++)
+                fingerprints.putNext(segment);
+
+            Path file = Paths.get(String.format("segment-%06d.fp", segments.size()));
+            segments.add(IndexSegment.build(file, segment, neighbourIndex(searchIndex)));
+        }
+
+        return new IndexSnapshot(segments, true, 1, Collections.emptyMap());
+    }
+
+    /**
+     * @param name <code>scan</code>, <code>chunk8</code>, <code>chunk16</code> or <code>bktree</code>.
+     */
+    static NeighbourIndex neighbourIndex(String name) {
+        switch (name) {
+            case "scan":
+                return null;
+            case "chunk8":
+                return new ChunkIndex(8);
+            case "chunk16":
+                return new ChunkIndex(16);
+            case "bktree":
+                return new BkTreeIndex();
+            default:
+                throw new IllegalArgumentException("Unknown search index " + name);
+        }
+    }
+
+    /**
+     * Fingerprints in clusters of 1 to 32 datasets, which differ from the centre of their cluster in
+     * up to 12 buckets and by up to a tenth in text length.
+     */
+    private static final class Fingerprints {
+
+        private final SplittableRandom random;
+        private int count;
+
+        private long centreHi;
+        private long centreLo;
+        private int centreLength;
+        private int members;
+
+        Fingerprints(long seed) {
+            random = new SplittableRandom(seed);
+        }
+
+        void putNext(FingerprintIndex index) {
+            if (members == 0) {
+                centreHi = random.nextLong();
+                centreLo = random.nextLong();
+                centreLength = 50 + (int) (3000 * Math.pow(random.nextDouble(), 2));
+                members = 1 + random.nextInt(32);
+            }
+            members--;
+
+            long hi = centreHi, lo = centreLo;
+            for (int change = random.nextInt(13); change > 0; change--) {
+                int bucket = random.nextInt(64);
+                long value = random.nextInt(4);
+                if (bucket < 32)
+                    hi = hi & ~(3L << 2 * bucket) | value << 2 * bucket;
+                else
+                    lo = lo & ~(3L << 2 * (bucket - 32)) | value << 2 * (bucket - 32);
+            }
+            int length = centreLength + random.nextInt(centreLength / 5 + 1) - centreLength / 10;
+
+            index.put(URI_PREFIX + count++, hi, lo, length);
+        }
+    }
+}
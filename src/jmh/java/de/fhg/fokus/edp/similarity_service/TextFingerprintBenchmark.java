@@ -0,0 +1,65 @@
+package de.fhg.fokus.edp.similarity_service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fingerprints per second of a single hash worker: text normalization and TLSH hashing of title and
+ * description, as HashVerticle does for every dataset.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class TextFingerprintBenchmark {
+
+    private static final int DATASETS = 10_000;
+
+    private SyntheticDatasets.Texts texts;
+    private final long[] code = new long[2];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        texts = SyntheticDatasets.texts(DATASETS, 42);
+    }
+
+    @Benchmark
+    public int normalize() {
+        int i = nextDataset();
+        TextNormalizer normalizer = TextNormalizer.forCurrentThread();
+        normalizer.reset();
+        int length = normalizer.append(texts.titles[i]);
+        normalizer.appendRaw("    ");
+        return length + normalizer.append(texts.descriptions[i]);
+    }
+
+    @Benchmark
+    public long fingerprint() {
+        int i = nextDataset();
+        TextNormalizer normalizer = TextNormalizer.forCurrentThread();
+        normalizer.reset();
+        int length = normalizer.append(texts.titles[i]);
+        normalizer.appendRaw("    ");
+        length += normalizer.append(texts.descriptions[i]);
+
+        if (length == 0)
+            return 0;
+
+        TlshHasher.hash(normalizer.text(), normalizer.length(), code, 0);
+        return code[0] ^ code[1];
+    }
+
+    private int nextDataset() {
+        int i = next;
+        next = i + 1 < texts.size() ? i + 1 : 0;
+        return i;
+    }
+}
@@ -10,10 +10,65 @@ final class ApplicationConfig {
     static final String ENV_WORK_DIR = "WORK_DIR";
     static final String DEFAULT_WORK_DIR = "/tmp/dataset-fingerprints/";
 
+    static final String ENV_FINGERPRINT_ON_STARTUP = "FINGERPRINT_ON_STARTUP";
+    static final Boolean DEFAULT_FINGERPRINT_ON_STARTUP = false;
+
+    static final String ENV_INCREMENTAL_FINGERPRINT = "INCREMENTAL_FINGERPRINT";
+    static final Boolean DEFAULT_INCREMENTAL_FINGERPRINT = true;
+
+    /**
+     * Completed fingerprint files in the work directory, as opposed to temporary ones.
+     */
+    static final String FINGERPRINT_FILE_PATTERN = ".*\\.fp";
+
     static final String ENV_SPARQL_URL = "SPARQL_URL";
     static final String DEFAULT_SPARQL_URL = "https://www.europeandataportal.eu/sparql";
 
+    static final String ENV_PAGE_SIZE = "PAGE_SIZE";
+    static final Integer DEFAULT_PAGE_SIZE = 1024;
+
+    static final String ENV_CRAWL_CONCURRENCY = "CRAWL_CONCURRENCY";
+    static final Integer DEFAULT_CRAWL_CONCURRENCY = 4;
+
+    static final String ENV_HASH_WORKERS = "HASH_WORKERS";
+    static final Integer DEFAULT_HASH_WORKERS = Runtime.getRuntime().availableProcessors();
+
+    static final String ENV_SIMILARITY_INSTANCES = "SIMILARITY_INSTANCES";
+    static final Integer DEFAULT_SIMILARITY_INSTANCES = 1;
+
+    static final String ENV_MAX_DISTANCE = "MAX_DISTANCE";
+    static final Integer DEFAULT_MAX_DISTANCE = 40;
+
+    static final String ENV_DISTANCE_KERNEL = "DISTANCE_KERNEL";
+    static final String DEFAULT_DISTANCE_KERNEL = "swar";
+
+    static final String ENV_SCAN_ENGINE = "SCAN_ENGINE";
+    static final String DEFAULT_SCAN_ENGINE = "scalar";
+
+    static final String ENV_SCAN_PARALLELISM = "SCAN_PARALLELISM";
+
+    static final String ENV_SCAN_SHARD_SIZE = "SCAN_SHARD_SIZE";
+    static final Integer DEFAULT_SCAN_SHARD_SIZE = 65536;
+
+    static final String ENV_SEARCH_INDEX = "SEARCH_INDEX";
+    static final String DEFAULT_SEARCH_INDEX = "scan";
+
+    static final String ENV_CHUNK_COUNT = "CHUNK_COUNT";
+    static final Integer DEFAULT_CHUNK_COUNT = 8;
+
+    static final String ENV_RESULT_CACHE_BYTES = "RESULT_CACHE_BYTES";
+    static final Long DEFAULT_RESULT_CACHE_BYTES = 64L * 1024 * 1024;
+
+    static final String ENV_KNN_GRAPH_K = "KNN_GRAPH_K";
+    static final Integer DEFAULT_KNN_GRAPH_K = 0;
+
     static final String ADDRESS_GET_SIMILARITY = "getSimilarity";
+    static final String ADDRESS_GET_SIMILARITIES = "getSimilarities";
     static final String ADDRESS_START_FINGERPRINT = "startFingerprint";
     static final String ADDRESS_INDEX_CATALOGUE = "indexCatalogue";
+    static final String ADDRESS_UPDATE_CATALOGUE = "updateCatalogue";
+    static final String ADDRESS_READINESS = "readiness";
+    static final String ADDRESS_CRAWL_STATUS = "crawlStatus";
+    static final String ADDRESS_HASH_DATASETS = "hashDatasets";
+    static final String ADDRESS_CACHE_STATUS = "cacheStatus";
 }
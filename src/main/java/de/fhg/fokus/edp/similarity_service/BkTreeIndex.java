@@ -0,0 +1,121 @@
+package de.fhg.fokus.edp.similarity_service;
+
+import java.util.Arrays;
+
+/**
+ * Burkhard-Keller tree over TLSH fingerprints.
+ * Nodes are keyed on {@link DistanceKernel#unitDistance}, which is a metric: every
+ * child hangs off its parent under its distance to it, and a range query only descends
+ * into children whose edge lies within the query radius of the distance between query
+ * and parent. Since the bucket distance is the unit distance divided by the unit,
+ * a bucket radius r is the unit radius (r + 1) * UNIT_DIST - 1 and results are exact.
+ * The length penalty is applied to the candidates found.
+ * <p>
+ * Built once per segment with one node per fingerprint, inserted in ordinal order, so that
+ * node and ordinal coincide and the codes are read from the fingerprint index itself.
+ */
+final class BkTreeIndex implements NeighbourIndex {
+
+    private static final int NO_NODE = -1;
+
+    private int[] edges = new int[0];
+    private int[] firstChildren = new int[0];
+    private int[] nextSiblings = new int[0];
+    private int nodeCount;
+
+    @Override
+    public void build(FingerprintIndex index) {
+        int size = index.size();
+        edges = new int[size];
+        firstChildren = new int[size];
+        nextSiblings = new int[size];
+        Arrays.fill(firstChildren, NO_NODE);
+        Arrays.fill(nextSiblings, NO_NODE);
+
+        for (int ordinal = 0; ordinal < size; ordinal++)
+            insert(index, ordinal);
+        nodeCount = size;
+    }
+
+    @Override
+    public boolean supports(FingerprintQuery query) {
+        return true;
+    }
+
+    @Override
+    public HitList search(FingerprintIndex index, FingerprintQuery query, DistanceKernel kernel) {
+        HitList hits = new HitList(query.getLimit());
+        if (nodeCount == 0) {
+            hits.sort();
+            return hits;
+        }
+
+        long queryHi = query.getHi(), queryLo = query.getLo();
+        double lngLeft = query.getLength();
+
+        int[] stack = new int[64];
+        int depth = 0;
+        stack[depth++] = 0;
+        int visited = 0;
+
+        while (depth > 0) {
+            int node = stack[--depth];
+            visited++;
+            int unitDistance = DistanceKernel.unitDistance(queryHi ^ index.hi(node), queryLo ^ index.lo(node));
+            int radius = Math.min(query.getMaxDistance(), hits.worstDistance());
+
+            if (node != query.getOrdinal()) {
+                int distance = unitDistance / DistanceKernel.UNIT_DIST + ScanEngine.lengthPenalty(lngLeft, index.length(node));
+                if (distance <= radius && distance >= query.getMinDistance()) {
+                    hits.add(node, distance);
+                    radius = Math.min(radius, hits.worstDistance());
+                }
+            }
+
+            int unitRadius = (radius + 1) * DistanceKernel.UNIT_DIST - 1;
+            for (int child = firstChildren[node]; child != NO_NODE; child = nextSiblings[child]) {
+                if (Math.abs(edges[child] - unitDistance) <= unitRadius) {
+                    if (depth == stack.length)
+                        stack = Arrays.copyOf(stack, 2 * depth);
+                    stack[depth++] = child;
+                }
+            }
+        }
+
+        hits.countCandidates(visited);
+        hits.sort();
+        return hits;
+    }
+
+    @Override
+    public long heapBytes() {
+        return 4L * (edges.length + firstChildren.length + nextSiblings.length);
+    }
+
+    /**
+     * Hangs the node of <code>ordinal</code> into the tree, below the root, the node of ordinal 0.
+     */
+    private void insert(FingerprintIndex index, int ordinal) {
+        if (ordinal == 0)
+            return;
+
+        long hi = index.hi(ordinal), lo = index.lo(ordinal);
+        int parent = 0;
+        while (true) {
+            int distance = DistanceKernel.unitDistance(hi ^ index.hi(parent), lo ^ index.lo(parent));
+
+            int child = firstChildren[parent];
+            while (child != NO_NODE && edges[child] != distance)
+                child = nextSiblings[child];
+
+            if (child == NO_NODE) {
+                edges[ordinal] = distance;
+                nextSiblings[ordinal] = firstChildren[parent];
+                firstChildren[parent] = ordinal;
+                return;
+            }
+
+            parent = child;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package de.fhg.fokus.edp.similarity_service;
+
+import java.util.Arrays;
+
+/**
+ * Multi-index hashing over TLSH fingerprints.
+ * Every fingerprint is split into <code>chunks</code> chunks of consecutive buckets, and
+ * one table per chunk lists the ordinals by chunk value. The bucket distance of two
+ * fingerprints is at least the number of buckets in which they differ, so by the
+ * pigeonhole principle two fingerprints within a radius smaller than the number of
+ * chunks agree exactly in at least one chunk. Such queries only compare the candidates
+ * listed under the query's own chunk values.
+ * <p>
+ * Every table is an array of chunk values sorted ascending and a parallel array of
+ * ordinals, searched by binary search, so that its size is proportional to the number
+ * of fingerprints however small the index.
+ */
+final class ChunkIndex implements NeighbourIndex {
+
+    private final int chunks;
+    private final int chunkBits;
+    private final int chunksPerWord;
+
+    private final int[][] keys;
+    private final int[][] ordinals;
+
+    /**
+     * @param chunks Number of chunks, 8 (16 bit chunks) or 16 (8 bit chunks).
+     */
+    ChunkIndex(int chunks) {
+        if (chunks != 8 && chunks != 16)
+            throw new IllegalArgumentException("Unsupported number of chunks: " + chunks);
+
+        this.chunks = chunks;
+        this.chunkBits = 128 / chunks;
+        this.chunksPerWord = chunks / 2;
+        this.keys = new int[chunks][];
+        this.ordinals = new int[chunks][];
+    }
+
+    /**
+     * Sorts all ordinals by chunk value, ties by ordinal, for every chunk.
+     */
+    @Override
+    public void build(FingerprintIndex index) {
+        int size = index.size();
+        long[] entries = new long[size];
+
+        for (int c = 0; c < chunks; c++) {
+            for (int ordinal = 0; ordinal < size; ordinal++)
+                entries[ordinal] = (long) chunk(index.hi(ordinal), index.lo(ordinal), c) << 32 | ordinal;
+            Arrays.sort(entries);
+
+            int[] chunkKeys = new int[size];
+            int[] chunkOrdinals = new int[size];
+            for (int i = 0; i < size; i++) {
+                chunkKeys[i] = (int) (entries[i] >>> 32);
+                chunkOrdinals[i] = (int) entries[i];
+            }
+
+            keys[c] = chunkKeys;
+            ordinals[c] = chunkOrdinals;
+        }
+    }
+
+    @Override
+    public boolean supports(FingerprintQuery query) {
+        return query.getMaxDistance() < chunks;
+    }
+
+    @Override
+    public HitList search(FingerprintIndex index, FingerprintQuery query, DistanceKernel kernel) {
+        HitList hits = new HitList(query.getLimit());
+        long queryHi = query.getHi(), queryLo = query.getLo();
+        double lngLeft = query.getLength();
+
+        for (int c = 0; c < chunks; c++) {
+            int key = chunk(queryHi, queryLo, c);
+            int[] chunkKeys = keys[c];
+            int[] chunkOrdinals = ordinals[c];
+
+            int first = firstIndexOf(chunkKeys, key);
+            int i = first;
+            for (; i < chunkKeys.length && chunkKeys[i] == key; i++) {
+                int ordinal = chunkOrdinals[i];
+                if (ordinal == query.getOrdinal())
+                    continue;
+
+                long xorHi = queryHi ^ index.hi(ordinal), xorLo = queryLo ^ index.lo(ordinal);
+
+                // candidates agreeing in several chunks are only compared at the first of them
+                if (firstEqualChunk(xorHi, xorLo) != c)
+                    continue;
+
+                int radius = Math.min(query.getMaxDistance(), hits.worstDistance());
+                int penalty = ScanEngine.lengthPenalty(lngLeft, index.length(ordinal));
+                if (penalty > radius)
+                    continue;
+
+                int distance = penalty + kernel.distance(xorHi, xorLo, radius - penalty);
+                if (distance <= radius && distance >= query.getMinDistance())
+                    hits.add(ordinal, distance);
+            }
+            hits.countCandidates(i - first);
+        }
+
+        hits.sort();
+        return hits;
+    }
+
+    @Override
+    public long heapBytes() {
+        long bytes = 0;
+        for (int c = 0; c < chunks; c++)
+            if (keys[c] != null)
+                bytes += 4L * keys[c].length + 4L * ordinals[c].length;
+        return bytes;
+    }
+
+    /**
+     * @return Index of the first occurrence of <code>key</code> in the sorted <code>chunkKeys</code>,
+     * or of the first greater value.
+     */
+    private static int firstIndexOf(int[] chunkKeys, int key) {
+        int low = 0, high = chunkKeys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (chunkKeys[middle] < key)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    private int chunk(long hi, long lo, int c) {
+        long word = c < chunksPerWord ? hi : lo;
+        int shift = 64 - ((c % chunksPerWord) + 1) * chunkBits;
+        return (int) (word >>> shift) & ((1 << chunkBits) - 1);
+    }
+
+    private int firstEqualChunk(long xorHi, long xorLo) {
+        for (int c = 0; c < chunks; c++)
+            if (chunk(xorHi, xorLo, c) == 0)
+                return c;
+        return -1;
+    }
+}
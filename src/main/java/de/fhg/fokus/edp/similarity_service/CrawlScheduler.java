@@ -0,0 +1,156 @@
+package de.fhg.fokus.edp.similarity_service;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Limits the number of SPARQL requests of a crawl that are in flight at the same time.
+ * Requests beyond the limit wait in one queue per language; whenever a request completes,
+ * the languages take turns in starting the next one, so that a language with many large
+ * catalogues does not hold up all others.
+ * Not thread safe; used on the context of the FingerprintVerticle only.
+ */
+final class CrawlScheduler {
+
+    private final int concurrency;
+
+    private final Map<String, ArrayDeque<Runnable>> queues = new LinkedHashMap<>();
+
+    /**
+     * Languages with queued requests, in the order they get their next turn.
+     */
+    private final ArrayDeque<String> turns = new ArrayDeque<>();
+
+    private int inFlight;
+    private int queued;
+
+    private long completedRequests;
+    private long failedRequests;
+    private long fingerprints;
+
+    /**
+     * Throughput is measured over the current busy period, or the last one while idle.
+     */
+    private long busySince = System.nanoTime();
+    private long idleSince = busySince;
+    private boolean busy;
+    private long periodRequests;
+    private long periodFingerprints;
+
+    /**
+     * @param concurrency Maximum number of requests in flight, at least 1.
+     */
+    CrawlScheduler(int concurrency) {
+        if (concurrency < 1)
+            throw new IllegalArgumentException("Concurrency must be positive, was " + concurrency);
+
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Queues a request of the given language; it is started as soon as a slot is free and it is
+     * the language's turn.
+     *
+     * @param request Starts the request; called at most once.
+     * @return Completes with the request.
+     */
+    <T> Future<T> submit(String language, Supplier<Future<T>> request) {
+        Future<T> future = Future.future();
+
+        if (!busy) {
+            busy = true;
+            busySince = System.nanoTime();
+            periodRequests = 0;
+            periodFingerprints = 0;
+        }
+
+        ArrayDeque<Runnable> queue = queues.computeIfAbsent(language, key -> new ArrayDeque<>());
+        if (queue.isEmpty())
+            turns.add(language);
+
+        queue.add(() -> start(request).setHandler(handler -> {
+            inFlight--;
+            if (handler.succeeded()) {
+                completedRequests++;
+                periodRequests++;
+            } else {
+                failedRequests++;
+            }
+
+            dispatch();
+            future.handle(handler);
+
+            // checked only now, follow-up requests submitted by the handler continue the busy period
+            if (inFlight == 0 && queued == 0) {
+                busy = false;
+                idleSince = System.nanoTime();
+            }
+        }));
+        queued++;
+
+        dispatch();
+        return future;
+    }
+
+    /**
+     * Counts fingerprints computed from the results of requests, for the throughput.
+     */
+    void recordFingerprints(int count) {
+        fingerprints += count;
+        periodFingerprints += count;
+    }
+
+    /**
+     * @return Queue depths, requests in flight, totals and throughput as JSON.
+     */
+    JsonObject status() {
+        JsonObject languages = new JsonObject();
+        queues.forEach((language, queue) -> {
+            if (!queue.isEmpty())
+                languages.put(language, queue.size());
+        });
+
+        double seconds = ((busy ? System.nanoTime() : idleSince) - busySince) / 1e9;
+
+        return new JsonObject()
+            .put("concurrency", concurrency)
+            .put("inFlight", inFlight)
+            .put("queued", queued)
+            .put("queuedByLanguage", languages)
+            .put("completedRequests", completedRequests)
+            .put("failedRequests", failedRequests)
+            .put("fingerprints", fingerprints)
+            .put("requestsPerSecond", seconds > 0 ? periodRequests / seconds : 0.0)
+            .put("fingerprintsPerSecond", seconds > 0 ? periodFingerprints / seconds : 0.0);
+    }
+
+    /**
+     * @return The started request, or a failed future if it could not be started, so that its slot is released.
+     */
+    private static <T> Future<T> start(Supplier<Future<T>> request) {
+        try {
+            return request.get();
+        } catch (RuntimeException e) {
+            return Future.failedFuture(e);
+        }
+    }
+
+    private void dispatch() {
+        while (inFlight < concurrency && !turns.isEmpty()) {
+            String language = turns.poll();
+            ArrayDeque<Runnable> queue = queues.get(language);
+            Runnable request = queue.poll();
+            if (!queue.isEmpty())
+                turns.add(language);
+
+            queued--;
+            inFlight++;
+            request.run();
+        }
+    }
+}
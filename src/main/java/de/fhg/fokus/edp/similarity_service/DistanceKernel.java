@@ -0,0 +1,130 @@
+package de.fhg.fokus.edp.similarity_service;
+
+/**
+ * Distance between two TLSH fingerprints of 64 2-bit buckets, given as the XOR of
+ * their two packed words. Differing buckets count 1 each; since every bucket
+ * difference of pattern "10" weighs 10 instead of 8 units, every fourth such
+ * bucket adds another 1.
+ */
+enum DistanceKernel {
+
+    /**
+     * Sums a 256 entry lookup table over the 16 bytes and divides by the unit distance.
+     */
+    TABLE {
+        @Override
+        int distance(long xorHi, long xorLo) {
+            return (byteDiffSum(xorHi) + byteDiffSum(xorLo)) / UNIT_DIST;
+        }
+
+        @Override
+        int distance(long xorHi, long xorLo, int bound) {
+            int sum = byteDiffSum(xorHi);
+            if (sum / UNIT_DIST > bound)
+                return sum / UNIT_DIST;
+
+            return (sum + byteDiffSum(xorLo)) / UNIT_DIST;
+        }
+    },
+
+    /**
+     * Counts differing buckets and "10" patterns with masks and Long.bitCount; no table, no branches.
+     */
+    SWAR {
+        @Override
+        int distance(long xorHi, long xorLo) {
+            long lowHi = xorHi & LOW_BITS, highHi = (xorHi >>> 1) & LOW_BITS;
+            long lowLo = xorLo & LOW_BITS, highLo = (xorLo >>> 1) & LOW_BITS;
+
+            int differing = Long.bitCount(lowHi | highHi) + Long.bitCount(lowLo | highLo);
+            int highOnly = Long.bitCount(highHi & ~lowHi) + Long.bitCount(highLo & ~lowLo);
+
+            // (UNIT_DIST * differing + 2 * highOnly) / UNIT_DIST
+            return differing + (highOnly >>> 2);
+        }
+
+        @Override
+        int distance(long xorHi, long xorLo, int bound) {
+            long lowHi = xorHi & LOW_BITS, highHi = (xorHi >>> 1) & LOW_BITS;
+            int partial = Long.bitCount(lowHi | highHi) + (Long.bitCount(highHi & ~lowHi) >>> 2);
+            if (partial > bound)
+                return partial;
+
+            return distance(xorHi, xorLo);
+        }
+    };
+
+    static final int UNIT_DIST = 8;
+
+    /**
+     * Low bit of every 2-bit bucket.
+     */
+    private static final long LOW_BITS = 0x5555555555555555L;
+
+    /**
+     * Each byte of a TLSH fingerprint contain 4 2-bit values.
+     * The difference between two such bytes x,y
+     * is rapidly determined by DIFF_COUNT[(x^y)&255].
+     */
+    private static final int[] DIFF_COUNT = new int[256];
+
+    static {
+        DIFF_COUNT[0] = 0;
+        int length = 1;
+        do {
+            for (int i = 0; i < length; i++) {
+                //differentiate a bit:
+                DIFF_COUNT[i + length] = DIFF_COUNT[i + 3 * length] = DIFF_COUNT[i] + UNIT_DIST;
+                DIFF_COUNT[i + 2 * length] = DIFF_COUNT[i] + UNIT_DIST + 2;
+            }
+            length *= 4;
+        } while (length < 256);
+    }
+
+    abstract int distance(long xorHi, long xorLo);
+
+    /**
+     * Like {@link #distance(long, long)}, but may stop after the first word once the
+     * partial distance exceeds <code>bound</code>, returning that partial distance.
+     * The result is exact whenever it is not greater than <code>bound</code>.
+     */
+    abstract int distance(long xorHi, long xorLo, int bound);
+
+    /**
+     * Distance before the division by the unit distance: every differing bucket weighs
+     * UNIT_DIST, or UNIT_DIST + 2 for pattern "10". Unlike the divided distance this
+     * satisfies the triangle inequality, so it can be used to prune metric trees.
+     */
+    static int unitDistance(long xorHi, long xorLo) {
+        long lowHi = xorHi & LOW_BITS, highHi = (xorHi >>> 1) & LOW_BITS;
+        long lowLo = xorLo & LOW_BITS, highLo = (xorLo >>> 1) & LOW_BITS;
+
+        int differing = Long.bitCount(lowHi | highHi) + Long.bitCount(lowLo | highLo);
+        int highOnly = Long.bitCount(highHi & ~lowHi) + Long.bitCount(highLo & ~lowLo);
+
+        return UNIT_DIST * differing + 2 * highOnly;
+    }
+
+    /**
+     * Resolves a kernel by its case-insensitive name.
+     *
+     * @throws IllegalArgumentException if there is no such kernel
+     */
+    static DistanceKernel byName(String name) {
+        return valueOf(name.toUpperCase());
+    }
+
+    /**
+     * Sums DIFF_COUNT over the 8 bytes of an XORed fingerprint word.
+     */
+    private static int byteDiffSum(long x) {
+        return DIFF_COUNT[(int) (x >>> 56) & 255]
+            + DIFF_COUNT[(int) (x >>> 48) & 255]
+            + DIFF_COUNT[(int) (x >>> 40) & 255]
+            + DIFF_COUNT[(int) (x >>> 32) & 255]
+            + DIFF_COUNT[(int) (x >>> 24) & 255]
+            + DIFF_COUNT[(int) (x >>> 16) & 255]
+            + DIFF_COUNT[(int) (x >>> 8) & 255]
+            + DIFF_COUNT[(int) x & 255];
+    }
+}
@@ -0,0 +1,328 @@
+package de.fhg.fokus.edp.similarity_service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StreamTokenizer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary fingerprint file of one catalogue.
+ * <pre>
+ * header   magic (int), version (int), record count (int), URI heap size (int)
+ * records  count * (fingerprint high word (long), low word (long), text length (int), URI offset (int))
+ * heap     UTF-8 encoded URIs, back to back; a URI ends where the next record's URI starts
+ * </pre>
+ * All numbers are big endian. Records are fixed width, so the file is read by mapping
+ * it into memory and addressing records by position.
+ * <p>
+ * While a catalogue is fingerprinted, records and URIs are appended one by one to two
+ * temporary files, which {@link #assemble} joins into the final file.
+ * Files in the former text format (<code>"uri" "32 hex digits" length</code> per line)
+ * are still read.
+ */
+final class FingerprintFile {
+
+    static final int MAGIC = 0x45444650; // "EDFP"
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 24;
+
+    private static final String RECORDS_SUFFIX = ".records";
+    private static final String URIS_SUFFIX = ".uris";
+
+    /**
+     * Receives the records of a fingerprint file in file order.
+     */
+    interface RecordConsumer {
+        void accept(String uri, long hi, long lo, int textLength) throws IOException;
+    }
+
+    /**
+     * Fingerprint of a single dataset.
+     */
+    static final class Record {
+        private final String uri;
+        private final long hi;
+        private final long lo;
+        private final int textLength;
+
+        Record(String uri, long hi, long lo, int textLength) {
+            this.uri = uri;
+            this.hi = hi;
+            this.lo = lo;
+            this.textLength = textLength;
+        }
+
+        String uri() {
+            return uri;
+        }
+
+        long hi() {
+            return hi;
+        }
+
+        long lo() {
+            return lo;
+        }
+
+        int textLength() {
+            return textLength;
+        }
+    }
+
+    private FingerprintFile() {
+    }
+
+    /**
+     * Opens the temporary parts of the file <code>tmpFile</code> for appending records.
+     */
+    static Appender appender(Path tmpFile) throws IOException {
+        return new Appender(tmpFile);
+    }
+
+    /**
+     * Appends records one by one to the temporary parts of a file under construction, through
+     * buffers of fixed size.
+     */
+    static final class Appender implements Closeable {
+        private static final int BUFFER_SIZE = 64 * 1024;
+
+        private final Path tmpFile;
+        private final FileChannel recordChannel;
+        private final FileChannel uriChannel;
+        private final ByteBuffer recordBuffer = ByteBuffer.allocate(BUFFER_SIZE - BUFFER_SIZE % RECORD_SIZE);
+        private final ByteBuffer uriBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+        // replaces malformed input like String.getBytes, so that encode never fails
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        private long heapSize;
+
+        private Appender(Path tmpFile) throws IOException {
+            this.tmpFile = tmpFile;
+            this.recordChannel = openForAppend(part(tmpFile, RECORDS_SUFFIX));
+            try {
+                this.uriChannel = openForAppend(part(tmpFile, URIS_SUFFIX));
+            } catch (IOException e) {
+                recordChannel.close();
+                throw e;
+            }
+            this.heapSize = uriChannel.size();
+        }
+
+        void append(String uri, long hi, long lo, int textLength) throws IOException {
+            if (!recordBuffer.hasRemaining())
+                flush(recordChannel, recordBuffer);
+            recordBuffer.putLong(hi).putLong(lo).putInt(textLength).putInt((int) heapSize);
+
+            heapSize += encode(uri);
+            if (heapSize > Integer.MAX_VALUE)
+                throw new IOException("URI heap of " + tmpFile + " exceeds 2 GB");
+        }
+
+        /**
+         * Encodes a URI into the URI buffer, which is flushed first unless it surely has room.
+         *
+         * @return Number of bytes written.
+         */
+        private int encode(String uri) throws IOException {
+            int maxBytes = 3 * uri.length();
+
+            if (maxBytes > uriBuffer.capacity()) {
+                flush(uriChannel, uriBuffer);
+                byte[] bytes = uri.getBytes(StandardCharsets.UTF_8);
+                writeFully(uriChannel, ByteBuffer.wrap(bytes));
+                return bytes.length;
+            }
+
+            if (uriBuffer.remaining() < maxBytes)
+                flush(uriChannel, uriBuffer);
+
+            int start = uriBuffer.position();
+            encoder.reset();
+            encoder.encode(CharBuffer.wrap(uri), uriBuffer, true);
+            encoder.flush(uriBuffer);
+            return uriBuffer.position() - start;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try (FileChannel records = recordChannel; FileChannel uris = uriChannel) {
+                flush(records, recordBuffer);
+                flush(uris, uriBuffer);
+            }
+        }
+
+        private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+            buffer.flip();
+            writeFully(channel, buffer);
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Joins the temporary parts of <code>tmpFile</code> into <code>tmpFile</code> itself
+     * and deletes them. A catalogue without any record yields a file without records.
+     */
+    static void assemble(Path tmpFile) throws IOException {
+        Path recordPart = part(tmpFile, RECORDS_SUFFIX), uriPart = part(tmpFile, URIS_SUFFIX);
+
+        try (FileChannel target = FileChannel.open(tmpFile,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+            long recordBytes = Files.exists(recordPart) ? Files.size(recordPart) : 0;
+            long heapSize = Files.exists(uriPart) ? Files.size(uriPart) : 0;
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                .putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt((int) (recordBytes / RECORD_SIZE))
+                .putInt((int) heapSize);
+            header.flip();
+            writeFully(target, header);
+
+            transferAll(recordPart, target);
+            transferAll(uriPart, target);
+        }
+
+        Files.deleteIfExists(recordPart);
+        Files.deleteIfExists(uriPart);
+    }
+
+    /**
+     * Deletes leftovers of an interrupted run, so that a new run starts from scratch.
+     */
+    static void discard(Path tmpFile) throws IOException {
+        Files.deleteIfExists(tmpFile);
+        Files.deleteIfExists(part(tmpFile, RECORDS_SUFFIX));
+        Files.deleteIfExists(part(tmpFile, URIS_SUFFIX));
+    }
+
+    /**
+     * Reads all records of a binary or text fingerprint file.
+     */
+    static void read(Path file, RecordConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Fingerprint file " + file + " exceeds 2 GB");
+
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            channel.read(magic, 0);
+
+            if (magic.position() == 4 && magic.getInt(0) == MAGIC) {
+                readBinary(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), consumer);
+            } else {
+                readText(file, consumer);
+            }
+        }
+    }
+
+    private static void readBinary(Path file, MappedByteBuffer buffer, RecordConsumer consumer) throws IOException {
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(4) != VERSION)
+            throw new IOException("Unsupported fingerprint file version in " + file);
+
+        int count = buffer.getInt(8);
+        int heapSize = buffer.getInt(12);
+
+        if (count < 0 || heapSize < 0 || HEADER_SIZE + (long) count * RECORD_SIZE + heapSize != buffer.limit())
+            throw new IOException("Truncated fingerprint file " + file);
+
+        int heapStart = HEADER_SIZE + count * RECORD_SIZE;
+
+        byte[] uriBytes = new byte[256];
+
+        for (int i = 0; i < count; i++) {
+            int record = HEADER_SIZE + i * RECORD_SIZE;
+            int uriStart = buffer.getInt(record + 20);
+            int uriEnd = i + 1 < count ? buffer.getInt(record + RECORD_SIZE + 20) : heapSize;
+
+            // offsets out of order or beyond the heap would fail as runtime exceptions rather than I/O errors
+            if (uriStart < 0 || uriStart > uriEnd || uriEnd > heapSize)
+                throw new IOException("Corrupt fingerprint file " + file + ": URI of record " + i
+                    + " spans [" + uriStart + ", " + uriEnd + ") of a heap of " + heapSize + " bytes");
+
+            int uriLength = uriEnd - uriStart;
+
+            if (uriLength > uriBytes.length)
+                uriBytes = new byte[uriLength];
+
+            buffer.position(heapStart + uriStart);
+            buffer.get(uriBytes, 0, uriLength);
+
+            consumer.accept(
+                new String(uriBytes, 0, uriLength, StandardCharsets.UTF_8),
+                buffer.getLong(record),
+                buffer.getLong(record + 8),
+                buffer.getInt(record + 16));
+        }
+    }
+
+    private static void readText(Path file, RecordConsumer consumer) throws IOException {
+        try (Reader sr = new InputStreamReader(Files.newInputStream(file))) {
+            StreamTokenizer tok = new StreamTokenizer(sr);
+            tok.quoteChar('"');
+            tok.parseNumbers();
+            tok.eolIsSignificant(false);
+
+            while (tok.nextToken() != StreamTokenizer.TT_EOF) {
+                if (tok.ttype != '"')
+                    throw new IOException("URI string expected in file " + file.getFileName());
+
+                String uri = tok.sval;
+                tok.nextToken();
+
+                if (tok.ttype != '"')
+                    throw new IOException("Fingerprint string expected in file " + file.getFileName());
+
+                if (tok.sval.length() != 32)
+                    throw new IOException("32 hex digits expected in file " + file.getFileName());
+
+                long hi = FingerprintIndex.parseWord(tok.sval, 0);
+                long lo = FingerprintIndex.parseWord(tok.sval, 16);
+
+                if (tok.nextToken() != StreamTokenizer.TT_NUMBER)
+                    throw new IOException("Number expected in file " + file.getFileName());
+
+                consumer.accept(uri, hi, lo, (int) tok.nval);
+            }
+        }
+    }
+
+    private static Path part(Path tmpFile, String suffix) {
+        return Paths.get(tmpFile.toString() + suffix);
+    }
+
+    private static FileChannel openForAppend(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    private static void transferAll(Path source, FileChannel target) throws IOException {
+        if (!Files.exists(source))
+            return;
+
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            long position = 0, size = channel.size();
+            while (position < size)
+                position += channel.transferTo(position, size - position, target);
+        }
+    }
+}
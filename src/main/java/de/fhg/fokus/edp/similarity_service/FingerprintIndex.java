@@ -0,0 +1,226 @@
+package de.fhg.fokus.edp.similarity_service;
+
+import java.util.Arrays;
+
+/**
+ * Columnar store of TLSH fingerprints.
+ * Every dataset is addressed by an int ordinal. Its 128 bit fingerprint is packed
+ * into two consecutive longs (high word first), the length of title+description
+ * is kept in a parallel int array and the URI in a string dictionary.
+ * Not thread safe; owned by the verticle that fills it.
+ */
+final class FingerprintIndex {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final int NO_ORDINAL = -1;
+
+    /**
+     * Heap taken by a String and its byte array besides the characters.
+     */
+    private static final int STRING_OVERHEAD = 40;
+
+    private long[] codes = new long[2 * INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private String[] uris = new String[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Open addressing hash table (linear probing) from URI to ordinal.
+     * Slots hold ordinals or NO_ORDINAL; the key is looked up in uris.
+     */
+    private int[] slots = newSlots(2 * INITIAL_CAPACITY);
+
+    /**
+     * Adds a fingerprint, or overwrites it if the URI is already known.
+     *
+     * @return Ordinal of the dataset.
+     */
+    int put(String uri, long hi, long lo, int textLength) {
+        int slot = findSlot(uri);
+        int ordinal = slots[slot];
+
+        if (ordinal == NO_ORDINAL) {
+            ensureCapacity(size + 1);
+            ordinal = size++;
+            uris[ordinal] = uri;
+            slots[slot] = ordinal;
+
+            if (2 * size > slots.length)
+                rehash(2 * slots.length);
+        }
+
+        codes[2 * ordinal] = hi;
+        codes[2 * ordinal + 1] = lo;
+        lengths[ordinal] = textLength;
+
+        return ordinal;
+    }
+
+    /**
+     * Removes a dataset. To keep ordinals dense, the dataset with the highest ordinal
+     * takes over the ordinal of the removed one.
+     *
+     * @return Ordinal of the removed dataset, now held by the former last dataset
+     * unless the removed one was last; a negative value if the URI is not indexed.
+     */
+    int remove(String uri) {
+        int slot = findSlot(uri);
+        int ordinal = slots[slot];
+        if (ordinal == NO_ORDINAL)
+            return NO_ORDINAL;
+
+        deleteSlot(slot);
+
+        int last = --size;
+        if (ordinal != last) {
+            slots[findSlot(uris[last])] = ordinal;
+            uris[ordinal] = uris[last];
+            codes[2 * ordinal] = codes[2 * last];
+            codes[2 * ordinal + 1] = codes[2 * last + 1];
+            lengths[ordinal] = lengths[last];
+        }
+        uris[last] = null;
+
+        return ordinal;
+    }
+
+    /**
+     * @return Independent copy with the same ordinals.
+     */
+    FingerprintIndex copy() {
+        FingerprintIndex copy = new FingerprintIndex();
+        copy.codes = codes.clone();
+        copy.lengths = lengths.clone();
+        copy.uris = uris.clone();
+        copy.size = size;
+        copy.slots = slots.clone();
+        return copy;
+    }
+
+    /**
+     * @return Ordinal of the given URI, or a negative value if it is not indexed.
+     */
+    int ordinalOf(String uri) {
+        return slots[findSlot(uri)];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return Approximate heap taken by the index, assuming compressed references and Latin-1 URIs.
+     */
+    long heapBytes() {
+        long bytes = 8L * codes.length + 4L * lengths.length + 4L * uris.length + 4L * slots.length;
+        for (int ordinal = 0; ordinal < size; ordinal++)
+            bytes += STRING_OVERHEAD + uris[ordinal].length();
+        return bytes;
+    }
+
+    String uri(int ordinal) {
+        return uris[ordinal];
+    }
+
+    long hi(int ordinal) {
+        return codes[2 * ordinal];
+    }
+
+    long lo(int ordinal) {
+        return codes[2 * ordinal + 1];
+    }
+
+    int length(int ordinal) {
+        return lengths[ordinal];
+    }
+
+    /**
+     * Packed fingerprints, two longs per ordinal.
+     * The array is replaced when the index grows, so callers must not keep it across insertions.
+     */
+    long[] codes() {
+        return codes;
+    }
+
+    /**
+     * Text lengths by ordinal; same caveat as {@link #codes()}.
+     */
+    int[] lengths() {
+        return lengths;
+    }
+
+    /**
+     * Parses 16 hex digits starting at <code>from</code> into one fingerprint word.
+     */
+    static long parseWord(String hex, int from) {
+        return Long.parseUnsignedLong(hex.substring(from, from + 16), 16);
+    }
+
+    private int findSlot(String uri) {
+        int mask = slots.length - 1;
+        int slot = mix(uri.hashCode()) & mask;
+
+        while (slots[slot] != NO_ORDINAL && !uris[slots[slot]].equals(uri))
+            slot = (slot + 1) & mask;
+
+        return slot;
+    }
+
+    /**
+     * Empties a slot and moves later entries of its probe sequence back, so that lookups
+     * never stop at the gap.
+     */
+    private void deleteSlot(int slot) {
+        int mask = slots.length - 1;
+        int gap = slot;
+        int next = (gap + 1) & mask;
+
+        while (slots[next] != NO_ORDINAL) {
+            int home = mix(uris[slots[next]].hashCode()) & mask;
+            // move the entry unless its home lies cyclically in (gap, next]
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                slots[gap] = slots[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+
+        slots[gap] = NO_ORDINAL;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > lengths.length) {
+            int newCapacity = Math.max(capacity, lengths.length + (lengths.length >> 1));
+            codes = Arrays.copyOf(codes, 2 * newCapacity);
+            lengths = Arrays.copyOf(lengths, newCapacity);
+            uris = Arrays.copyOf(uris, newCapacity);
+        }
+    }
+
+    private void rehash(int slotCount) {
+        slots = newSlots(slotCount);
+        int mask = slotCount - 1;
+
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            int slot = mix(uris[ordinal].hashCode()) & mask;
+            while (slots[slot] != NO_ORDINAL)
+                slot = (slot + 1) & mask;
+            slots[slot] = ordinal;
+        }
+    }
+
+    private static int[] newSlots(int slotCount) {
+        int[] newSlots = new int[slotCount];
+        Arrays.fill(newSlots, NO_ORDINAL);
+        return newSlots;
+    }
+
+    /**
+     * Spreads String hash codes, which tend to differ only in the low bits for similar URIs.
+     */
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
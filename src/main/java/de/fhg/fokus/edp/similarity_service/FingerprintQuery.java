@@ -0,0 +1,72 @@
+package de.fhg.fokus.edp.similarity_service;
+
+/**
+ * Fingerprint of the dataset a similarity request refers to, together with the
+ * bounds of the request.
+ */
+final class FingerprintQuery {
+
+    private final int ordinal;
+    private final long hi;
+    private final long lo;
+    private final int length;
+    private final int minDistance;
+    private final int maxDistance;
+    private final int limit;
+
+    FingerprintQuery(FingerprintIndex index, int ordinal, int minDistance, int maxDistance, int limit) {
+        this(ordinal, index.hi(ordinal), index.lo(ordinal), index.length(ordinal), minDistance, maxDistance, limit);
+    }
+
+    private FingerprintQuery(int ordinal, long hi, long lo, int length, int minDistance, int maxDistance, int limit) {
+        this.ordinal = ordinal;
+        this.hi = hi;
+        this.lo = lo;
+        this.length = length;
+        this.minDistance = minDistance;
+        this.maxDistance = maxDistance;
+        this.limit = limit;
+    }
+
+    /**
+     * @param ordinal Ordinal of the queried dataset in another index, or a negative value if it is not in there.
+     * @return The same query for searching another index.
+     */
+    FingerprintQuery forOrdinal(int ordinal) {
+        return new FingerprintQuery(ordinal, hi, lo, length, minDistance, maxDistance, limit);
+    }
+
+    /**
+     * @return Ordinal of the queried dataset, which is never reported as a hit.
+     */
+    int getOrdinal() {
+        return ordinal;
+    }
+
+    long getHi() {
+        return hi;
+    }
+
+    long getLo() {
+        return lo;
+    }
+
+    int getLength() {
+        return length;
+    }
+
+    int getMinDistance() {
+        return minDistance;
+    }
+
+    int getMaxDistance() {
+        return maxDistance;
+    }
+
+    /**
+     * @return Maximum number of hits to report; 0 or less for all of them.
+     */
+    int getLimit() {
+        return limit;
+    }
+}
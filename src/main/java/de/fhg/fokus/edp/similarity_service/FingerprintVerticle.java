@@ -1,22 +1,24 @@
 package de.fhg.fokus.edp.similarity_service;
 
-import de.fhg.fokus.edp.similarity_service.model.Dataset;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
-import io.vertx.core.buffer.Buffer;
+import io.vertx.core.WorkerExecutor;
 import io.vertx.core.eventbus.Message;
-import io.vertx.core.file.AsyncFile;
 import io.vertx.core.file.CopyOptions;
-import io.vertx.core.file.OpenOptions;
+import io.vertx.core.json.DecodeException;
 import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.jena.arq.querybuilder.Order;
 import org.apache.jena.arq.querybuilder.SelectBuilder;
 import org.apache.jena.query.Query;
-import org.apache.jena.query.QueryExecution;
 import org.apache.jena.query.QueryExecutionFactory;
 import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
 import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.sparql.engine.http.QueryEngineHTTP;
 import org.apache.jena.sparql.core.Var;
 import org.apache.jena.sparql.expr.*;
 import org.apache.jena.sparql.expr.nodevalue.NodeValueString;
@@ -26,13 +28,24 @@ import org.apache.jena.vocabulary.RDF;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import static de.fhg.fokus.edp.similarity_service.ApplicationConfig.*;
 
@@ -42,8 +55,29 @@ public class FingerprintVerticle extends AbstractVerticle {
 
     private static final String TMP_SUFFIX = ".tmp";
 
+    /**
+     * Sidecar of a fingerprint file holding the high-water mark of the run that wrote it.
+     */
+    private static final String STATE_SUFFIX = ".state";
+
+    /**
+     * Days before the date of a high-water mark from which changes are fetched again, see {@link #changeBound}.
+     */
+    private static final int CHANGE_MARGIN_DAYS = 2;
+
+    /**
+     * Smallest batch of datasets sent to a hash worker; smaller pages go to fewer workers.
+     */
+    private static final int MIN_HASH_BATCH_SIZE = 32;
+
     private String sparqlUrl;
     private String workDir;
+    private int pageSize;
+    private int hashWorkers;
+
+    private CrawlScheduler crawlScheduler;
+    private ServiceMetrics metrics;
+    private WorkerExecutor sparqlExecutor;
 
     // stores all possible language codes to allow use of an asterisk in config
     private static final List<String> ALL_LANGUAGE_CODES = Arrays.asList(
@@ -55,14 +89,9 @@ public class FingerprintVerticle extends AbstractVerticle {
         "NLD", "NOR", "POL", "PRT", "ROU",
         "SRB", "SWE", "SVN", "SVK", "EUROPE");
 
-    /**
-     * Number of buckets for TLSH.
-     * Originally 256; reduced to account for shorter strings.
-     */
-    private static final int N_BUCKETS = 64;
-
-    private int[] bucketCount = new int[N_BUCKETS], tmpaux = new int[N_BUCKETS];
-
+    private static final Var DATASET = Var.alloc("dataset");
+    private static final Var TITLE = Var.alloc("title");
+    private static final Var DESCRIPTION = Var.alloc("description");
 
     @Override
     public void start(Future<Void> future) {
@@ -70,13 +99,39 @@ public class FingerprintVerticle extends AbstractVerticle {
         sparqlUrl = config().getString(ENV_SPARQL_URL, DEFAULT_SPARQL_URL);
         workDir = config().getString(ENV_WORK_DIR, DEFAULT_WORK_DIR);
 
+        pageSize = config().getInteger(ENV_PAGE_SIZE, DEFAULT_PAGE_SIZE);
+        if (pageSize < 1) {
+            LOG.error("Invalid page size [{}]", pageSize);
+            future.fail("Invalid page size " + pageSize);
+            return;
+        }
+
+        hashWorkers = config().getInteger(ENV_HASH_WORKERS, DEFAULT_HASH_WORKERS);
+        if (hashWorkers < 1) {
+            LOG.error("Invalid number of hash workers [{}]", hashWorkers);
+            future.fail("Invalid number of hash workers " + hashWorkers);
+            return;
+        }
+
+        int crawlConcurrency = config().getInteger(ENV_CRAWL_CONCURRENCY, DEFAULT_CRAWL_CONCURRENCY);
+        if (crawlConcurrency < 1) {
+            LOG.error("Invalid crawl concurrency [{}]", crawlConcurrency);
+            future.fail("Invalid crawl concurrency " + crawlConcurrency);
+            return;
+        }
+
+        crawlScheduler = new CrawlScheduler(crawlConcurrency);
+        metrics = ServiceMetrics.of(vertx);
+        // SPARQL requests block a thread each; keep them off the pool shared with the other verticles
+        sparqlExecutor = vertx.createSharedWorkerExecutor("sparql-pool", crawlConcurrency);
+
         vertx.eventBus().consumer(ADDRESS_START_FINGERPRINT, this::fingerprintLanguages);
+        vertx.eventBus().consumer(ADDRESS_CRAWL_STATUS, this::handleCrawlStatusRequest);
 
         vertx.fileSystem().mkdirs(workDir, mkDirHandler -> {
             if (mkDirHandler.succeeded()) {
 
-                // fingerprint once on startup
-                ALL_LANGUAGE_CODES.forEach(this::fingerprint);
+                fingerprintOnStartup();
 
                 future.complete();
             } else {
@@ -86,6 +141,29 @@ public class FingerprintVerticle extends AbstractVerticle {
         });
     }
 
+    @Override
+    public void stop() {
+        if (sparqlExecutor != null)
+            sparqlExecutor.close();
+    }
+
+    /**
+     * Fingerprints, in the background, every language without any fingerprint file in the work directory,
+     * or every language if configured. Existing files are loaded by the SimilarityVerticle meanwhile.
+     */
+    private void fingerprintOnStartup() {
+        boolean refreshAll = config().getBoolean(ENV_FINGERPRINT_ON_STARTUP, DEFAULT_FINGERPRINT_ON_STARTUP);
+
+        vertx.fileSystem().readDir(workDir, FINGERPRINT_FILE_PATTERN, dirHandler -> {
+            List<String> existingFiles = dirHandler.succeeded() ? dirHandler.result() : Collections.emptyList();
+
+            ALL_LANGUAGE_CODES.stream()
+                .filter(langCode -> refreshAll || existingFiles.stream()
+                    .noneMatch(file -> Paths.get(file).getFileName().toString().startsWith(langCode + "_")))
+                .forEach(this::fingerprint);
+        });
+    }
+
     private void fingerprintLanguages(Message<String> message) {
 
         List<String> requestLanguages = new JsonArray(message.body()).getList();
@@ -103,105 +181,392 @@ public class FingerprintVerticle extends AbstractVerticle {
         });
     }
 
+    private void handleCrawlStatusRequest(Message<String> message) {
+        message.reply(crawlScheduler.status().encode());
+    }
+
     /**
      * Main call, usage: java genFP <one or more two-char language codes or __ for pan-European >
-     * Not reentrant within same class instance.
+     * Catalogues fingerprinted before are only updated with their changes, if configured.
      */
     private void fingerprint(String langCode) {
-        getCatalogURIs(langCode).setHandler(catalogueHandler ->
+        boolean incremental = config().getBoolean(ENV_INCREMENTAL_FINGERPRINT, DEFAULT_INCREMENTAL_FINGERPRINT);
+
+        crawlScheduler.submit(langCode, () -> getCatalogURIs(langCode)).setHandler(catalogueHandler -> {
+            if (catalogueHandler.failed()) {
+                LOG.error("Could not retrieve catalogues of language [{}] : {}", langCode, catalogueHandler.cause().getMessage());
+                return;
+            }
+
             catalogueHandler.result().forEach(catalogueUri -> {
                 String catalogueId = StringUtils.substringAfterLast(catalogueUri, "/");
-                Path targetFile = Paths.get(workDir).resolve(langCode + "_" + catalogueId + ".fp" + TMP_SUFFIX);
+                Path targetFile = Paths.get(workDir).resolve(langCode + "_" + catalogueId + ".fp");
+                Path tmpFile = Paths.get(targetFile + TMP_SUFFIX);
+
+                try {
+                    FingerprintFile.discard(tmpFile);
+                } catch (IOException e) {
+                    LOG.error("Could not delete leftovers of file [{}] : {}", tmpFile, e.getMessage());
+                    return;
+                }
 
-                LOG.debug("Fingerprinting catalogue [{}] to file [{}]", catalogueId, targetFile.toAbsolutePath());
-                processCatalogue(catalogueUri, langCode, targetFile, 0, 1024);
-            }));
+                String changedSince = incremental ? changeBound(readHighWaterMark(targetFile)) : null;
 
+                // taken before the datasets are read, so that changes made meanwhile are picked up next time
+                crawlScheduler.submit(langCode, () -> getHighWaterMark(catalogueUri)).setHandler(markHandler -> {
+                    if (markHandler.failed()) {
+                        LOG.error("Could not retrieve last change of catalogue [{}] : {}", catalogueUri, markHandler.cause().getMessage());
+                        return;
+                    }
+
+                    if (changedSince != null) {
+                        LOG.debug("Updating catalogue [{}] in file [{}] with changes since [{}]", catalogueId, targetFile.toAbsolutePath(), changedSince);
+                        updateCatalogue(catalogueUri, langCode, targetFile, tmpFile, changedSince, markHandler.result());
+                    } else {
+                        LOG.debug("Fingerprinting catalogue [{}] to file [{}]", catalogueId, tmpFile.toAbsolutePath());
+                        processCatalogue(catalogueUri, langCode, tmpFile, markHandler.result(), null, Future.succeededFuture());
+                    }
+                });
+            });
+        });
     }
 
     /**
      * Generate fingerprints for one particular EDP catalog.
+     * Every page is fetched here and hashed by the HashVerticles; the next page is fetched while the
+     * current one is hashed and written, once the page before is written. So at most two pages of a
+     * catalogue are held at a time. Pages are written strictly one after the other, so the file lists
+     * the datasets in the same order whatever the number of hash workers.
      *
-     * @param catalogueUri Catalog URI.
+     * @param catalogueUri  Catalog URI.
+     * @param highWaterMark Last change in the catalogue before fingerprinting started, or null if unknown.
+     * @param after         URI of the last dataset already processed, or null to start with the first one.
+     * @param previousPage  Completes once the previous page is written and recorded; fails as soon as
+     *                      any previous page failed. Reported by the last page of the chain.
      */
-    private void processCatalogue(String catalogueUri, String langCode, Path tmpFile, int offset, int limit) {
+    private void processCatalogue(String catalogueUri, String langCode, Path tmpFile, String highWaterMark, String after, Future<Void> previousPage) {
+
+        crawlScheduler.submit(langCode, () -> fetchPage(catalogueUri, null, after, null)).setHandler(handler -> {
+            if (handler.failed()) {
+                LOG.error("Aborted fingerprinting catalogue [{}] : {}", catalogueUri, handler.cause().getMessage());
+                return;
+            }
 
-        getDatasets(catalogueUri, offset, limit).setHandler(handler -> {
-            LOG.debug("Retrieved [{}] datasets for catalogue [{}] of language [{}]", handler.result().size(), catalogueUri, langCode);
+            DatasetPage page = handler.result();
+            boolean lastPage = page.datasets < pageSize;
+            Future<Void> written = Future.future();
+
+            // every future of the chain gets a single handler: a future keeps only the last one set
+            previousPage
+                .compose(previous -> {
+                    if (!lastPage)
+                        // recursively continue processing catalogue after the last dataset of this page
+                        processCatalogue(catalogueUri, langCode, tmpFile, highWaterMark, page.lastUri, written);
+                    return page.hasher.fingerprints();
+                })
+                .compose(batches -> {
+                    page.fingerprints = batches.stream().mapToInt(HashBatch::fingerprints).sum();
+                    return appendFingerprints(tmpFile, batches);
+                })
+                .compose(appended -> {
+                    LOG.debug("Fingerprinted [{}] of [{}] datasets for catalogue [{}] of language [{}]", page.fingerprints, page.datasets, catalogueUri, langCode);
+                    crawlScheduler.recordFingerprints(page.fingerprints);
+                    metrics.recordFingerprints(langCode, StringUtils.substringAfterLast(catalogueUri, "/"), page.fingerprints);
+
+                    if (lastPage) {
+                        // fingerprinting is done, trigger reindex of file
+                        publish(catalogueUri, tmpFile, highWaterMark, ADDRESS_INDEX_CATALOGUE,
+                            StringUtils.removeEnd(tmpFile.toString(), TMP_SUFFIX));
+                    }
+                    return Future.<Void>succeededFuture();
+                })
+                .setHandler(doneHandler -> {
+                    // reported here unless the next page was requested, which passes the failure on
+                    if (doneHandler.failed() && (lastPage || previousPage.failed()))
+                        LOG.error("Aborted fingerprinting catalogue [{}] : {}", catalogueUri, doneHandler.cause().getMessage());
+                    written.handle(doneHandler);
+                });
+        });
+    }
 
-            int[] fingerprint = new int[N_BUCKETS];
+    /**
+     * Fetches one page of datasets with their English title and description. Runs on a SPARQL worker
+     * thread, which hands the texts to the hash workers in batches while the page is still parsed.
+     *
+     * @param uris If not null, receives the URIs of all datasets of the page.
+     */
+    private Future<DatasetPage> fetchPage(String catalogueUri, String changedSince, String after, Set<String> uris) {
+        return fetchPage(datasetQuery(catalogueUri, changedSince, after, pageSize), uris);
+    }
 
-            List<String> fileLines = new ArrayList<>();
-            handler.result().forEach(dataset -> {
+    /**
+     * Fetches the datasets selected by <code>query</code>, see {@link #datasetQuery} and {@link #datasetsQuery}.
+     */
+    private Future<DatasetPage> fetchPage(Query query, Set<String> uris) {
+        PageHasher hasher = new PageHasher();
+
+        return streamEdpSparqlQuery(query, solutions -> {
+            DatasetPage page = new DatasetPage(hasher);
+
+            while (solutions.hasNext()) {
+                QuerySolution solution = solutions.next();
+                String uri = solution.getResource(DATASET.getVarName()).getURI();
+                page.accept(uri);
+                if (uris != null)
+                    uris.add(uri);
+
+                if (solution.contains(TITLE.getVarName())) {
+                    hasher.add(uri, solution.getLiteral(TITLE.getVarName()).getString(),
+                        solution.getLiteral(DESCRIPTION.getVarName()).getString());
+                }
+            }
 
-                String sanitizedTitle = sanitize(dataset.getTitle());
-                String sanitizedDescription = sanitize(dataset.getDescription());
+            hasher.finish();
+            return page;
+        });
+    }
 
-                if (!(sanitizedTitle.isEmpty() && sanitizedDescription.isEmpty())) {
-                    String fingerprintText = sanitize(dataset.getTitle())
-                        + "    "
-                        + sanitize(dataset.getDescription());
+    private Future<Void> appendFingerprints(Path tmpFile, List<HashBatch> batches) {
+        try (FingerprintFile.Appender appender = FingerprintFile.appender(tmpFile)) {
+            for (HashBatch batch : batches) {
+                for (int i = 0; i < batch.size(); i++) {
+                    if (batch.hasFingerprint(i))
+                        appender.append(batch.uri(i), batch.hi(i), batch.lo(i), batch.textLength(i));
+                }
+            }
+        } catch (IOException e) {
+            return Future.failedFuture(e);
+        }
 
+        return Future.succeededFuture();
+    }
 
-                    TLSHfingerprint(fingerprintText, fingerprint);
+    /**
+     * Brings the fingerprint file of a catalogue up to date: datasets changed since the last run are
+     * fingerprinted again, datasets no longer in the catalogue are dropped and all others are copied
+     * from the existing file. Datasets in the catalogue but not in the file are fingerprinted as well,
+     * whatever their dates: they may have been added with an earlier date, or none, or have had no
+     * text to fingerprint last time. Only the difference is handed to the SimilarityVerticle.
+     *
+     * @param changedSince  Bound of the changes to fetch, derived from the high-water mark of the last run.
+     * @param highWaterMark Last change in the catalogue before this run started.
+     */
+    private void updateCatalogue(String catalogueUri, String langCode, Path targetFile, Path tmpFile, String changedSince, String highWaterMark) {
 
-                    StringBuilder stringBuilder = new StringBuilder()
-                        .append("\"").append(dataset.getUri()).append("\" \"");
+        ChangeSet changes = new ChangeSet();
+        Set<String> live = new HashSet<>();
 
-                    for (int i = 0; i < N_BUCKETS; i += 2)
-                        stringBuilder.append("0123456789ABCDEF".charAt(fingerprint[i] * 4 + fingerprint[i + 1]));
+        getAllPages(after -> crawlScheduler.submit(langCode,
+            () -> fingerprintChanges(catalogueUri, changedSince, after, changes))).setHandler(changedHandler -> {
+            if (changedHandler.failed()) {
+                LOG.error("Aborted updating catalogue [{}] : {}", catalogueUri, changedHandler.cause().getMessage());
+                return;
+            }
 
-                    int hflength = dataset.getTitle().length() + dataset.getDescription().length();
-                    stringBuilder.append("\" ").append(hflength).append("\n");
+            getAllPages(after -> crawlScheduler.submit(langCode,
+                () -> collectDatasetURIs(catalogueUri, after, live))).setHandler(liveHandler -> {
+                if (liveHandler.failed()) {
+                    LOG.error("Aborted updating catalogue [{}] : {}", catalogueUri, liveHandler.cause().getMessage());
+                    return;
+                }
 
-                    fileLines.add(stringBuilder.toString());
+                List<String> added;
+                try {
+                    added = missingDatasets(targetFile, live, changes.changedUris);
+                } catch (IOException e) {
+                    LOG.error("Could not read file [{}] : {}", targetFile, e.getMessage());
+                    return;
                 }
+
+                fingerprintAdded(langCode, added, 0, changes).setHandler(addedHandler -> {
+                    if (addedHandler.failed()) {
+                        LOG.error("Aborted updating catalogue [{}] : {}", catalogueUri, addedHandler.cause().getMessage());
+                        return;
+                    }
+
+                    JsonObject update;
+                    try {
+                        update = mergeChanges(targetFile, tmpFile, changes, live);
+                    } catch (IOException e) {
+                        LOG.error("Could not update file [{}] : {}", targetFile, e.getMessage());
+                        return;
+                    }
+
+                    LOG.debug("Catalogue [{}] has [{}] changed or added and [{}] removed datasets", catalogueUri,
+                        update.getJsonArray("upserts").size(), update.getJsonArray("removals").size());
+                    metrics.recordFingerprints(langCode, StringUtils.substringAfterLast(catalogueUri, "/"),
+                        update.getJsonArray("upserts").size());
+
+                    publish(catalogueUri, tmpFile, highWaterMark, ADDRESS_UPDATE_CATALOGUE, update.encode());
+                });
             });
+        });
+    }
 
-            vertx.fileSystem().open(tmpFile.toString(), new OpenOptions().setAppend(true), fileHandler -> {
-                if (fileHandler.succeeded()) {
-                    AsyncFile ws = fileHandler.result();
+    /**
+     * @return URIs of the datasets in the catalogue that are neither in its fingerprint file nor among the
+     * changed ones, in ascending order.
+     */
+    private static List<String> missingDatasets(Path targetFile, Set<String> live, Set<String> changedUris) throws IOException {
+        Set<String> known = new HashSet<>(changedUris);
+        FingerprintFile.read(targetFile, (uri, hi, lo, textLength) -> known.add(uri));
+
+        return live.stream()
+            .filter(uri -> !known.contains(uri))
+            .sorted()
+            .collect(Collectors.toList());
+    }
 
-                    fileLines.forEach(str -> {
-                        Buffer chunk = Buffer.buffer(str);
-                        ws.write(chunk);
-                    });
+    /**
+     * Fingerprints the datasets from <code>from</code> on into <code>changes</code>, a page at a time.
+     */
+    private Future<Void> fingerprintAdded(String langCode, List<String> added, int from, ChangeSet changes) {
+        if (from >= added.size())
+            return Future.succeededFuture();
 
-                    if (handler.result().size() == limit) {
-                        // recursively continue processing catalogue
-                        processCatalogue(catalogueUri, langCode, tmpFile, offset + limit, limit);
-                    } else {
-                        // fingerprinting is done, rename file and clean up
-                        CopyOptions copyOptions = new CopyOptions()
-                            .setAtomicMove(true)
-                            .setReplaceExisting(true);
-
-                        String targetFile = StringUtils.removeEnd(tmpFile.toString(), TMP_SUFFIX);
-
-                        vertx.fileSystem().move(tmpFile.toString(), targetFile, copyOptions, moveHandler -> {
-                            if (moveHandler.succeeded()) {
-                                // trigger reindex of file
-                                vertx.eventBus().send(ADDRESS_INDEX_CATALOGUE, targetFile);
-                                LOG.info("Finished fingerprinting catalogue [{}]", catalogueUri);
-                            } else {
-                                LOG.error("Failed to rename fingerprinting temp file [{}] : {}", tmpFile.toAbsolutePath(), moveHandler.cause());
-                            }
-                        });
+        List<String> uris = added.subList(from, Math.min(added.size(), from + pageSize));
+        return crawlScheduler.submit(langCode, () -> hashInto(fetchPage(datasetsQuery(uris), changes.changedUris), changes))
+            .compose(page -> fingerprintAdded(langCode, added, from + uris.size(), changes));
+    }
+
+    /**
+     * Fingerprints one page of changed datasets into <code>changes</code>. Pages are requested one after
+     * the other, so <code>changes</code> is never used concurrently.
+     */
+    private Future<DatasetPage> fingerprintChanges(String catalogueUri, String changedSince, String after, ChangeSet changes) {
+        return hashInto(fetchPage(catalogueUri, changedSince, after, changes.changedUris), changes);
+    }
+
+    private static Future<DatasetPage> hashInto(Future<DatasetPage> fetched, ChangeSet changes) {
+        return fetched.compose(page ->
+            page.hasher.fingerprints().map(batches -> {
+                for (HashBatch batch : batches) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        if (batch.hasFingerprint(i)) {
+                            changes.upserts.put(batch.uri(i), new FingerprintFile.Record(batch.uri(i), batch.hi(i),
+                                batch.lo(i), batch.textLength(i)));
+                            page.fingerprints++;
+                        }
                     }
-                } else {
-                    LOG.error("Could not open file [{}] : {}", tmpFile, fileHandler.cause());
                 }
+                return page;
+            }));
+    }
+
+    /**
+     * Adds one page of the URIs of all datasets of a catalogue to <code>live</code>.
+     * Runs on a SPARQL worker thread, see {@link #fingerprintChanges}.
+     */
+    private Future<DatasetPage> collectDatasetURIs(String catalogueUri, String after, Set<String> live) {
+        return streamEdpSparqlQuery(datasetPage(catalogueUri, after, pageSize).build(), solutions -> {
+            DatasetPage page = new DatasetPage(null);
+
+            while (solutions.hasNext()) {
+                String uri = solutions.next().getResource(DATASET.getVarName()).getURI();
+                page.accept(uri);
+                live.add(uri);
+            }
+
+            return page;
+        });
+    }
+
+    /**
+     * Writes the records of the existing fingerprint file that are still current, followed by the
+     * fingerprints of the changed datasets, to the temporary file.
+     *
+     * @param live URIs of all datasets currently in the catalogue.
+     * @return Fingerprint file, upserted records and removed URIs, as expected at ADDRESS_UPDATE_CATALOGUE.
+     */
+    private JsonObject mergeChanges(Path targetFile, Path tmpFile, ChangeSet changes, Set<String> live) throws IOException {
+        Map<String, FingerprintFile.Record> upserts = changes.upserts;
+        JsonArray removals = new JsonArray();
+
+        try (FingerprintFile.Appender appender = FingerprintFile.appender(tmpFile)) {
+            FingerprintFile.read(targetFile, (uri, hi, lo, textLength) -> {
+                // changed datasets without fingerprintable text are dropped as well
+                if (!live.contains(uri) || (changes.changedUris.contains(uri) && !upserts.containsKey(uri)))
+                    removals.add(uri);
+                else if (!upserts.containsKey(uri))
+                    appender.append(uri, hi, lo, textLength);
             });
+
+            for (FingerprintFile.Record record : upserts.values())
+                appender.append(record.uri(), record.hi(), record.lo(), record.textLength());
+        }
+        crawlScheduler.recordFingerprints(upserts.size());
+
+        JsonArray upsertRecords = new JsonArray();
+        upserts.values().forEach(record -> upsertRecords.add(new JsonObject()
+            .put("uri", record.uri())
+            .put("hi", record.hi())
+            .put("lo", record.lo())
+            .put("length", record.textLength())));
+
+        return new JsonObject()
+            .put("file", targetFile.toString())
+            .put("upserts", upsertRecords)
+            .put("removals", removals);
+    }
+
+    /**
+     * Assembles the temporary file, renames it to the fingerprint file, records the high-water mark
+     * and notifies the SimilarityVerticle.
+     */
+    private void publish(String catalogueUri, Path tmpFile, String highWaterMark, String address, String body) {
+        try {
+            FingerprintFile.assemble(tmpFile);
+        } catch (IOException e) {
+            LOG.error("Could not assemble file [{}] : {}", tmpFile, e.getMessage());
+            return;
+        }
+
+        CopyOptions copyOptions = new CopyOptions()
+            .setAtomicMove(true)
+            .setReplaceExisting(true);
+
+        Path targetFile = Paths.get(StringUtils.removeEnd(tmpFile.toString(), TMP_SUFFIX));
+
+        vertx.fileSystem().move(tmpFile.toString(), targetFile.toString(), copyOptions, moveHandler -> {
+            if (moveHandler.succeeded()) {
+                writeHighWaterMark(targetFile, catalogueUri, highWaterMark);
+                vertx.eventBus().send(address, body);
+                LOG.info("Finished fingerprinting catalogue [{}]", catalogueUri);
+            } else {
+                LOG.error("Failed to rename fingerprinting temp file [{}] : {}", tmpFile.toAbsolutePath(), moveHandler.cause());
+            }
         });
     }
 
-    private String sanitize(String input) {
-        return StringUtils.replaceEach( // remove english stop words
-            input.replaceAll("(?!\")\\p{Punct}", "") // remove punctuation except double quotes
-                .replaceAll("\"", "'") // replace double quotes with single quotes
-                .toLowerCase(),
-            ENGLISH_STOP_WORDS_L_1,
-            Stream.generate(() -> "").limit(ENGLISH_STOP_WORDS_L_1.length).toArray(String[]::new)); // generate array containing the same number of "" as there are stop words
+    /**
+     * @return High-water mark recorded with the fingerprint file, or null if the catalogue has to be
+     * fingerprinted from scratch.
+     */
+    private String readHighWaterMark(Path targetFile) {
+        Path stateFile = Paths.get(targetFile + STATE_SUFFIX);
+        if (!Files.exists(targetFile) || !Files.exists(stateFile))
+            return null;
+
+        try {
+            return new JsonObject(new String(Files.readAllBytes(stateFile), StandardCharsets.UTF_8)).getString("highWaterMark");
+        } catch (IOException | DecodeException | ClassCastException e) {
+            LOG.warn("Ignoring unreadable state file [{}] : {}", stateFile, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeHighWaterMark(Path targetFile, String catalogueUri, String highWaterMark) {
+        Path stateFile = Paths.get(targetFile + STATE_SUFFIX);
+        JsonObject state = new JsonObject()
+            .put("catalogue", catalogueUri)
+            .put("highWaterMark", highWaterMark);
+
+        try {
+            Files.write(stateFile, state.encode().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // the next run will start from scratch
+            LOG.error("Could not write state file [{}] : {}", stateFile, e.getMessage());
+        }
     }
 
     /**
@@ -216,8 +581,6 @@ public class FingerprintVerticle extends AbstractVerticle {
      */
     private Future<List<String>> getCatalogURIs(String langCode) {
 
-        Future<List<String>> completionFuture = Future.future();
-
         Var catalogue = Var.alloc("catalogue");
         Var spatial = Var.alloc("spatial");
 
@@ -228,208 +591,329 @@ public class FingerprintVerticle extends AbstractVerticle {
             .addFilter(new E_StrContains(new E_Str(new ExprVar(spatial)), new NodeValueString(langCode)))
             .build();
 
-        issueEdpSparqlQuery(catalogueQuery).setHandler(catalogueHandler ->
-            completionFuture.complete(catalogueHandler.result().stream()
-                .map(solution -> solution.getResource(catalogue.getVarName()).getURI())
-                .collect(Collectors.toList())));
-
-        return completionFuture;
+        return issueEdpSparqlQuery(catalogueQuery).map(solutions -> solutions.stream()
+            .map(solution -> solution.getResource(catalogue.getVarName()).getURI())
+            .collect(Collectors.toList()));
     }
 
     /**
-     * builds a SPARQL query
+     * builds a SPARQL query for one page of datasets, ordered by URI.
+     * Pages are addressed by the last URI of the previous page rather than by an offset, so that the
+     * triple store does not have to skip all earlier datasets again for every page.
+     * Datasets without English title and description are included without them, to keep every page
+     * full until the catalogue is exhausted.
      *
      * @param catalogueUri The EDP data catalog URI whose datasets are to be queried.
+     * @param changedSince If not null, only datasets modified (or, lacking that, issued) at or after this time.
+     * @param after        If not null, only datasets whose URI sorts after this one.
+     * @param limit        Number of datasets per page; datasets with several titles or descriptions yield several rows.
      */
-    private Future<List<Dataset>> getDatasets(String catalogueUri, int offset, int limit) {
+    private static Query datasetQuery(String catalogueUri, String changedSince, String after, int limit) {
 
-        Future<List<Dataset>> completionFuture = Future.future();
+        SelectBuilder subQuery = datasetPage(catalogueUri, after, limit);
 
-        Var dataset = Var.alloc("dataset");
-        Var title = Var.alloc("title");
-        Var description = Var.alloc("description");
+        if (changedSince != null) {
+            Var modified = Var.alloc("modified");
+            Var issued = Var.alloc("issued");
+
+            // inclusive, changes within the same instant as the high-water mark may have been missed
+            subQuery.setDistinct(true)
+                .addOptional(DATASET, DCTerms.modified, modified)
+                .addOptional(DATASET, DCTerms.issued, issued)
+                .addFilter(new E_GreaterThanOrEqual(lastChange(modified, issued), new NodeValueString(changedSince)));
+        }
 
-        Expr languageFilter = new E_LogicalAnd(
+        SelectBuilder text = new SelectBuilder()
+            .addWhere(DATASET, DCTerms.title, TITLE)
+            .addWhere(DATASET, DCTerms.description, DESCRIPTION)
+            .addFilter(languageFilter());
+
+        return new SelectBuilder()
+            .setDistinct(true)
+            .addVar(DATASET)
+            .addVar(TITLE)
+            .addVar(DESCRIPTION)
+            .addSubQuery(subQuery)
+            .addOptional(text)
+            .addOrderBy(new ExprVar(DATASET), Order.ASCENDING)
+            .build();
+    }
+
+    /**
+     * Accepts English titles and descriptions, or those without language tag.
+     */
+    private static Expr languageFilter() {
+        return new E_LogicalAnd(
             new E_LogicalOr(
-                new E_Equals(new E_Lang(new ExprVar(title)), new NodeValueString("")),
-                new E_StrStartsWith(new E_Lang(new ExprVar(title)), new NodeValueString("en"))),
+                new E_Equals(new E_Lang(new ExprVar(TITLE)), new NodeValueString("")),
+                new E_StrStartsWith(new E_Lang(new ExprVar(TITLE)), new NodeValueString("en"))),
             new E_LogicalOr(
-                new E_Equals(new E_Lang(new ExprVar(description)), new NodeValueString("")),
-                new E_StrStartsWith(new E_Lang(new ExprVar(description)), new NodeValueString("en"))));
+                new E_Equals(new E_Lang(new ExprVar(DESCRIPTION)), new NodeValueString("")),
+                new E_StrStartsWith(new E_Lang(new ExprVar(DESCRIPTION)), new NodeValueString("en"))));
+    }
 
-        SelectBuilder subQuery = new SelectBuilder()
-            .addVar(dataset)
-            .addWhere(ResourceFactory.createResource(catalogueUri), DCAT.dataset, dataset)
-            .addOrderBy(new ExprVar(dataset), Order.ASCENDING);
+    /**
+     * Selects the next <code>limit</code> dataset URIs of a catalogue after <code>after</code>.
+     * SPARQL orders IRIs by their strings, so comparing the strings continues exactly where the
+     * previous page ended.
+     */
+    private static SelectBuilder datasetPage(String catalogueUri, String after, int limit) {
+        SelectBuilder page = new SelectBuilder()
+            .addVar(DATASET)
+            .addWhere(ResourceFactory.createResource(catalogueUri), DCAT.dataset, DATASET)
+            .addOrderBy(new ExprVar(DATASET), Order.ASCENDING)
+            .setLimit(limit);
+
+        if (after != null)
+            page.addFilter(new E_GreaterThan(new E_Str(new ExprVar(DATASET)), new NodeValueString(after)));
 
-        Query datasetQuery = new SelectBuilder()
+        return page;
+    }
+
+    /**
+     * Builds a SPARQL query for the given datasets, with the columns of {@link #datasetQuery}.
+     */
+    private static Query datasetsQuery(Collection<String> uris) {
+        SelectBuilder text = new SelectBuilder()
+            .addWhere(DATASET, DCTerms.title, TITLE)
+            .addWhere(DATASET, DCTerms.description, DESCRIPTION)
+            .addFilter(languageFilter());
+
+        return new SelectBuilder()
             .setDistinct(true)
-            .addVar(dataset)
-            .addVar(title)
-            .addVar(description)
-            .addSubQuery(subQuery)
-            .addWhere(dataset, DCTerms.title, title)
-            .addWhere(dataset, DCTerms.description, description)
-            .addFilter(languageFilter)
-            .setLimit(limit)
-            .setOffset(offset)
+            .addVar(DATASET)
+            .addVar(TITLE)
+            .addVar(DESCRIPTION)
+            .addWhereValueVar(DATASET, uris.stream().map(ResourceFactory::createResource).toArray())
+            .addOptional(text)
+            .addOrderBy(new ExprVar(DATASET), Order.ASCENDING)
             .build();
+    }
+
+    /**
+     * Determines the latest dct:modified, or dct:issued where that is missing, of all datasets
+     * of a catalogue. Values are compared as strings, which orders ISO 8601 dates and times of the same
+     * form and offset correctly; anything else is only approximately ordered, see {@link #changeBound}.
+     *
+     * @return High-water mark, or null if no dataset carries either date.
+     */
+    private Future<String> getHighWaterMark(String catalogueUri) {
 
-        issueEdpSparqlQuery(datasetQuery).setHandler(catalogueHandler ->
-            completionFuture.complete(catalogueHandler.result().stream()
-                .map(solution -> new Dataset(
-                    solution.getResource(dataset.getVarName()).getURI(),
-                    solution.getLiteral(title.getVarName()).getString(),
-                    solution.getLiteral(description.getVarName()).getString()
-                ))
-                .collect(Collectors.toList())));
+        Var dataset = Var.alloc("dataset");
+        Var modified = Var.alloc("modified");
+        Var issued = Var.alloc("issued");
+        Var changed = Var.alloc("changed");
 
-        return completionFuture;
+        Query markQuery = new SelectBuilder()
+            .addVar(changed)
+            .addWhere(ResourceFactory.createResource(catalogueUri), DCAT.dataset, dataset)
+            .addOptional(dataset, DCTerms.modified, modified)
+            .addOptional(dataset, DCTerms.issued, issued)
+            .addBind(lastChange(modified, issued), changed)
+            .addFilter(new E_Bound(new ExprVar(changed)))
+            .addOrderBy(new ExprVar(changed), Order.DESCENDING)
+            .setLimit(1)
+            .build();
+
+        return issueEdpSparqlQuery(markQuery).map(solutions -> solutions.isEmpty()
+            ? null
+            : solutions.get(0).getLiteral(changed.getVarName()).getString());
+    }
+
+    private static Expr lastChange(Var modified, Var issued) {
+        ExprList dates = new ExprList();
+        dates.add(new ExprVar(modified));
+        dates.add(new ExprVar(issued));
+        return new E_Str(new E_Coalesce(dates));
+    }
+
+    /**
+     * Derives the bound of the changes to fetch from the high-water mark of the last run. Dates are compared
+     * as strings, as stores differ in comparing <code>xsd:date</code> with <code>xsd:dateTime</code>, so a
+     * mark with a time or offset is not exactly comparable with plain dates or other offsets. The bound is
+     * therefore a plain date {@value #CHANGE_MARGIN_DAYS} days before the date of the mark, which every
+     * later change sorts after whatever its form and offset; changes within the margin are fetched again.
+     *
+     * @return Bound, or null to fingerprint from scratch if there is no mark or it does not start with an
+     * ISO 8601 date.
+     */
+    private static String changeBound(String highWaterMark) {
+        if (highWaterMark == null || highWaterMark.length() < 10)
+            return null;
+
+        try {
+            return LocalDate.parse(highWaterMark.substring(0, 10)).minusDays(CHANGE_MARGIN_DAYS).toString();
+        } catch (DateTimeParseException e) {
+            LOG.warn("Ignoring high-water mark [{}] : {}", highWaterMark, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Requests consecutive pages, each starting after the last URI of the previous one,
+     * until a page holds fewer than <code>pageSize</code> datasets.
+     *
+     * @param page Requests the page after the given URI, or the first page for null.
+     */
+    private Future<Void> getAllPages(Function<String, Future<DatasetPage>> page) {
+        Future<Void> future = Future.future();
+        getPagesAfter(page, null, future);
+        return future;
+    }
+
+    private void getPagesAfter(Function<String, Future<DatasetPage>> page, String after, Future<Void> future) {
+        page.apply(after).setHandler(handler -> {
+            if (handler.failed()) {
+                future.fail(handler.cause());
+            } else if (handler.result().datasets == pageSize) {
+                getPagesAfter(page, handler.result().lastUri, future);
+            } else {
+                future.complete();
+            }
+        });
     }
 
     /**
      * Submits the query to the SPARQL interface of the EDP.
      * URL encoding of query is taken care of here.
-     * In reply returned, header line is NOT skipped.
      *
      * @param query Properly encoded SPARQL query
-     * @return unprocessed reply in BufferedReader.
+     * @return All solutions; fails if the query could not be answered, so that no partial
+     * result is taken for a complete one.
      */
     private Future<List<QuerySolution>> issueEdpSparqlQuery(Query query) {
+        return streamEdpSparqlQuery(query, solutions -> {
+            List<QuerySolution> querySolutions = new ArrayList<>();
+            solutions.forEachRemaining(querySolutions::add);
+            return querySolutions;
+        });
+    }
+
+    /**
+     * Submits the query to the SPARQL interface of the EDP and hands the solutions to <code>reader</code>
+     * on a SPARQL worker thread while they are parsed from the response. XML results are requested,
+     * as Jena parses those incrementally, but reads JSON results into memory as a whole.
+     *
+     * @return Completes with the value returned by <code>reader</code>; fails if the query could not
+     * be answered or <code>reader</code> failed.
+     */
+    private <T> Future<T> streamEdpSparqlQuery(Query query, ResultReader<T> reader) {
         LOG.debug("Issuing query [{}] to [{}]", query.toString(), sparqlUrl);
 
-        Future<List<QuerySolution>> completionFuture = Future.future();
+        Future<T> completionFuture = Future.future();
 
-        vertx.executeBlocking(queryHandler -> {
-                try (QueryExecution queryExecution = QueryExecutionFactory.sparqlService(sparqlUrl, query)) {
+        sparqlExecutor.<T>executeBlocking(queryHandler -> {
+            long start = System.nanoTime();
+            try (QueryEngineHTTP queryExecution = QueryExecutionFactory.createServiceRequest(sparqlUrl, query)) {
 
-                    List<QuerySolution> querySolutions = new ArrayList<>();
-                    queryExecution.execSelect().forEachRemaining(querySolutions::add);
-                    queryHandler.complete(querySolutions);
+                queryExecution.setSelectContentType(WebContent.contentTypeResultsXML);
+                T result = reader.read(queryExecution.execSelect());
+                metrics.recordSparqlQuery(start, true);
+                queryHandler.complete(result);
 
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    LOG.error("Failed to issue SPARQL query [{}]: {}", query.toString(), e.getMessage());
-                    queryHandler.complete(new ArrayList<>());
-                }
-            }, resultHandler ->
-                completionFuture.complete((List<QuerySolution>) resultHandler.result())
-        );
+            } catch (Exception e) {
+                metrics.recordSparqlQuery(start, false);
+                LOG.error("Failed to issue SPARQL query [{}]: {}", query.toString(), e.getMessage());
+                queryHandler.fail(e);
+            }
+        }, false, completionFuture);
 
         return completionFuture;
     }
 
     /**
-     * computes TLSH fingerprint of string fingerprintText (which should not be too short)
-     * and stores it as values 0..3 in int[N_BUCKETS] fingerprint.
-     * Not reentrant in same class instance, due to use of class variables.
+     * Consumes the solutions of a query as they arrive.
      */
-    private void TLSHfingerprint(String fingerprintText, int[] fingerprint) throws IllegalArgumentException {
-        int i;
-
-        //reset counters:
-        for (i = 0; i < N_BUCKETS; i++)
-            bucketCount[i] = 0;
-
-        //initialize sliding 5-char window:
-        int c0 = (int) fingerprintText.charAt(0), c1 = (int) fingerprintText.charAt(1), c2 = (int) fingerprintText.charAt(2),
-            c3 = (int) fingerprintText.charAt(3), c4 = (int) fingerprintText.charAt(4);
-
-        i = 5;
-
-        while (true) {
-            bucketCount[pearson3b(c0, c1, c2)]++;
-            bucketCount[pearson3b(c0, c3, c1)]++;
-            bucketCount[pearson3b(c1, c0, c4)]++;
-            bucketCount[pearson3b(c3, c2, c0)]++;
-            bucketCount[pearson3b(c4, c0, c2)]++;
-            bucketCount[pearson3b(c3, c4, c0)]++;
-
-            //exit when end of string reached:
-            if (i >= fingerprintText.length())
-                break;
-
-            // slide window forward:
-            c0 = c1;
-            c1 = c2;
-            c2 = c3;
-            c3 = c4;
-            c4 = (int) fingerprintText.charAt(i);
-            i++;
-        }
-
-        // do remaining 4 triples:
-        bucketCount[pearson3b(c1, c2, c3)]++;
-        bucketCount[pearson3b(c1, c4, c2)]++;
-        bucketCount[pearson3b(c4, c3, c1)]++;
-        bucketCount[pearson3b(c2, c3, c4)]++;
-
-        //sort bucketCount, get quartils:
-        System.arraycopy(bucketCount, 0, tmpaux, 0, bucketCount.length);
-        Arrays.sort(tmpaux);
-
-        int qutil_1 = tmpaux[(tmpaux.length) / 4],
-            qutil_2 = tmpaux[(tmpaux.length) / 2],
-            qutil_3 = tmpaux[(3 * tmpaux.length) / 4];
-
-        if (qutil_1 < 0 || qutil_1 > qutil_2 || qutil_2 > qutil_3)
-            throw new IllegalArgumentException("Failed to generate TLSH fingerprint. Quartiles inconsistent.");
-
-        //encode :
-        for (i = 0; i < N_BUCKETS; i++) {
-            int bi = bucketCount[i];
-            // ensure 0→0:
-            fingerprint[i] = (bi <= qutil_1 ? 0 : bi >= qutil_3 ? 3 : bi >= qutil_2 ? 2 : 1);
-        }
+    private interface ResultReader<T> {
+        T read(ResultSet solutions) throws IOException;
     }
 
     /**
-     * Pearson's hash function of three bytes.
-     *
-     * @return Hash value in range 0..N_BUCKETS - 1.
+     * Counts the distinct datasets of a page of solutions ordered by URI, and keeps the last URI
+     * as the start of the next page.
      */
-    private int pearson3b(int pc0, int pc1, int pc2) {
-        return (PEARSON_TABLE[PEARSON_TABLE[pc0 & 255] ^ (pc1 & 255)] ^ (pc2 & 255)) % N_BUCKETS;
+    private static final class DatasetPage {
+        private int datasets;
+        private String lastUri;
+        private int fingerprints;
+        // fingerprints the datasets with English text, or null if the page holds URIs only
+        private final PageHasher hasher;
+
+        DatasetPage(PageHasher hasher) {
+            this.hasher = hasher;
+        }
+
+        void accept(String uri) {
+            if (!uri.equals(lastUri)) {
+                datasets++;
+                lastUri = uri;
+            }
+        }
     }
 
     /**
-     * English stop words, those to be removed from strings before fingerprinting.
-     * Only very few, in order not to destroy relevant semantics.
+     * Fingerprints the texts of a page on the HashVerticles while the page is parsed: texts are packed
+     * into batches of about one per worker, each sent by reference as soon as it is full. The batches
+     * are sent from the context of the verticle, which alone keeps track of them.
      */
-    private static final String[] ENGLISH_STOP_WORDS_L_1 = new String[]{
-        "it", "there", "if", "of",
-        // conjunctions:
-        "and", "so", "yet", "or", "moreover", "also", "too", "thus", "hence", "therefore", "furthermore", "likewise",
-        // determiners:
-        "a", "an", "the", "other", "another", "some", "any", "its", "their", "such",
-        "all", "every", "each",    // but retain one, same, many and most
-        //verbs:
-        "is", "are", "be", "was", "were", "been", "do", "does", "did", "will", "would",
-        // but retain can…, may…, shall…, must
-        // foreign:
-        "la", "der", "y", "de"
-    };
+    private final class PageHasher {
+        private final int batchSize = Math.max(MIN_HASH_BATCH_SIZE, (pageSize + hashWorkers - 1) / hashWorkers);
+        // filled by the SPARQL worker thread
+        private HashBatch batch;
+        // touched on the context of the verticle only
+        private final List<Future<HashBatch>> hashed = new ArrayList<>();
+
+        void add(String uri, String title, String description) {
+            if (batch == null)
+                batch = new HashBatch(batchSize);
+
+            batch.add(uri, title, description);
+            if (batch.isFull()) {
+                send(batch);
+                batch = null;
+            }
+        }
+
+        /**
+         * Sends the last batch of the page, once all texts are added.
+         */
+        void finish() {
+            if (batch != null)
+                send(batch);
+            batch = null;
+        }
+
+        private void send(HashBatch full) {
+            context.runOnContext(sent -> {
+                Future<HashBatch> reply = Future.future();
+                long start = System.nanoTime();
+                vertx.eventBus().<HashBatch>send(ADDRESS_HASH_DATASETS, full, ServiceMetrics.timedDelivery(), replied -> {
+                    metrics.recordRoundTrip(ADDRESS_HASH_DATASETS, start);
+                    reply.handle(replied.map(Message::body));
+                });
+                hashed.add(reply);
+            });
+        }
 
+        /**
+         * Joins the replies in the order the batches were sent, whatever order they arrive in. To be called
+         * on the context of the verticle once the page is fetched, when all batches have been sent.
+         */
+        Future<List<HashBatch>> fingerprints() {
+            return CompositeFuture.all(new ArrayList<>(hashed)).map(replies -> {
+                List<HashBatch> batches = new ArrayList<>(replies.size());
+                for (int sequence = 0; sequence < replies.size(); sequence++)
+                    batches.add(replies.resultAt(sequence));
+                return batches;
+            });
+        }
+    }
 
     /**
-     * "Random" permutation of bytes, for use in Pearson's hash function.
+     * Datasets changed since the last run, collected over all pages of an incremental update.
      */
-    private final static int[] PEARSON_TABLE = {
-        98, 6, 85, 150, 36, 23, 112, 164, 135, 207, 169, 5, 26, 64, 165, 219, //  1
-        61, 20, 68, 89, 130, 63, 52, 102, 24, 229, 132, 245, 80, 216, 195, 115, //  2
-        90, 168, 156, 203, 177, 120, 2, 190, 188, 7, 100, 185, 174, 243, 162, 10, //  3
-        237, 18, 253, 225, 8, 208, 172, 244, 255, 126, 101, 79, 145, 235, 228, 121, //  4
-        123, 251, 67, 250, 161, 0, 107, 97, 241, 111, 181, 82, 249, 33, 69, 55, //  5
-        59, 153, 29, 9, 213, 167, 84, 93, 30, 46, 94, 75, 151, 114, 73, 222, //  6
-        197, 96, 210, 45, 16, 227, 248, 202, 51, 152, 252, 125, 81, 206, 215, 186, //  7
-        39, 158, 178, 187, 131, 136, 1, 49, 50, 17, 141, 91, 47, 129, 60, 99, //  8
-        154, 35, 86, 171, 105, 34, 38, 200, 147, 58, 77, 118, 173, 246, 76, 254, //  9
-        133, 232, 196, 144, 198, 124, 53, 4, 108, 74, 223, 234, 134, 230, 157, 139, // 10
-        189, 205, 199, 128, 176, 19, 211, 236, 127, 192, 231, 70, 233, 88, 146, 44, // 11
-        183, 201, 22, 83, 13, 214, 116, 109, 159, 32, 95, 226, 140, 220, 57, 12, // 12
-        221, 31, 209, 182, 143, 92, 149, 184, 148, 62, 113, 65, 37, 27, 106, 166, // 13
-        3, 14, 204, 72, 21, 41, 56, 66, 28, 193, 40, 217, 25, 54, 179, 117, // 14
-        238, 87, 240, 155, 180, 170, 242, 212, 191, 163, 78, 218, 137, 194, 175, 110, // 15
-        43, 119, 224, 71, 122, 142, 42, 160, 104, 48, 247, 103, 15, 11, 138, 239  // 16
-    };
+    private static final class ChangeSet {
+        private final Set<String> changedUris = new HashSet<>();
+        private final Map<String, FingerprintFile.Record> upserts = new LinkedHashMap<>();
+    }
 }
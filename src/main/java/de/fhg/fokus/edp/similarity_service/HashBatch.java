@@ -0,0 +1,159 @@
+package de.fhg.fokus.edp.similarity_service;
+
+import io.vertx.core.buffer.Buffer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Texts of a batch of datasets sent to a HashVerticle, which fills in their fingerprints and replies
+ * with the same batch. Passed by reference on the event bus: the fetch stage does not touch a batch
+ * once sent, until the reply hands it back.
+ */
+final class HashBatch {
+
+    private static final int NO_FINGERPRINT = -1;
+
+    private final String[] uris;
+    private final String[] titles;
+    private final String[] descriptions;
+    // hi and lo of every dataset in turn
+    private final long[] codes;
+    private final int[] textLengths;
+    private int size;
+
+    HashBatch(int capacity) {
+        uris = new String[capacity];
+        titles = new String[capacity];
+        descriptions = new String[capacity];
+        codes = new long[2 * capacity];
+        textLengths = new int[capacity];
+    }
+
+    void add(String uri, String title, String description) {
+        uris[size] = uri;
+        titles[size] = title;
+        descriptions[size] = description;
+        textLengths[size++] = NO_FINGERPRINT;
+    }
+
+    boolean isFull() {
+        return size == uris.length;
+    }
+
+    int size() {
+        return size;
+    }
+
+    String uri(int i) {
+        return uris[i];
+    }
+
+    String title(int i) {
+        return titles[i];
+    }
+
+    String description(int i) {
+        return descriptions[i];
+    }
+
+    /**
+     * Records the fingerprint of a dataset and drops its texts, which are not needed anymore.
+     */
+    void setFingerprint(int i, long hi, long lo, int textLength) {
+        codes[2 * i] = hi;
+        codes[2 * i + 1] = lo;
+        textLengths[i] = textLength;
+        titles[i] = null;
+        descriptions[i] = null;
+    }
+
+    /**
+     * Drops the texts of a dataset without fingerprintable text.
+     */
+    void skip(int i) {
+        titles[i] = null;
+        descriptions[i] = null;
+    }
+
+    /**
+     * @return Whether the dataset has a fingerprint; datasets whose text is nothing but punctuation and
+     * stop words have none.
+     */
+    boolean hasFingerprint(int i) {
+        return textLengths[i] != NO_FINGERPRINT;
+    }
+
+    long hi(int i) {
+        return codes[2 * i];
+    }
+
+    long lo(int i) {
+        return codes[2 * i + 1];
+    }
+
+    int textLength(int i) {
+        return textLengths[i];
+    }
+
+    /**
+     * @return Number of datasets with a fingerprint.
+     */
+    int fingerprints() {
+        int fingerprints = 0;
+        for (int i = 0; i < size; i++) {
+            if (hasFingerprint(i))
+                fingerprints++;
+        }
+        return fingerprints;
+    }
+
+    /**
+     * Encodes the batch for a clustered event bus: its size, then per dataset URI, title, description,
+     * fingerprint and text length.
+     */
+    Buffer toBuffer() {
+        Buffer buffer = Buffer.buffer().appendInt(size);
+        for (int i = 0; i < size; i++) {
+            appendString(buffer, uris[i]);
+            appendString(buffer, titles[i]);
+            appendString(buffer, descriptions[i]);
+            buffer.appendLong(codes[2 * i]).appendLong(codes[2 * i + 1]).appendInt(textLengths[i]);
+        }
+        return buffer;
+    }
+
+    static HashBatch fromBuffer(Buffer buffer) {
+        int size = buffer.getInt(0);
+        int[] pos = {4};
+
+        HashBatch batch = new HashBatch(size);
+        for (int i = 0; i < size; i++) {
+            batch.add(readString(buffer, pos), readString(buffer, pos), readString(buffer, pos));
+            batch.codes[2 * i] = buffer.getLong(pos[0]);
+            batch.codes[2 * i + 1] = buffer.getLong(pos[0] + 8);
+            batch.textLengths[i] = buffer.getInt(pos[0] + 16);
+            pos[0] += 20;
+        }
+        return batch;
+    }
+
+    private static void appendString(Buffer buffer, String value) {
+        if (value == null) {
+            buffer.appendInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            buffer.appendInt(bytes.length).appendBytes(bytes);
+        }
+    }
+
+    private static String readString(Buffer buffer, int[] pos) {
+        int length = buffer.getInt(pos[0]);
+        pos[0] += 4;
+        if (length < 0)
+            return null;
+
+        String value = buffer.getString(pos[0], pos[0] + length, StandardCharsets.UTF_8.name());
+        pos[0] += length;
+        return value;
+    }
+}
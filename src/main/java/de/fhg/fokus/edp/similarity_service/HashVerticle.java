@@ -0,0 +1,63 @@
+package de.fhg.fokus.edp.similarity_service;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.eventbus.Message;
+
+import static de.fhg.fokus.edp.similarity_service.ApplicationConfig.*;
+
+/**
+ * Hash stage of fingerprinting: computes the fingerprints of batches of dataset texts fetched by the
+ * FingerprintVerticle. Deployed in several instances, among which the event bus spreads the batches,
+ * so that hashing uses all cores.
+ */
+public class HashVerticle extends AbstractVerticle {
+
+    private final long[] code = new long[2];
+    private ServiceMetrics metrics;
+
+    @Override
+    public void start() {
+        metrics = ServiceMetrics.of(vertx);
+        vertx.eventBus().consumer(ADDRESS_HASH_DATASETS, this::handleHashRequest);
+    }
+
+    /**
+     * Fills in the fingerprints of a batch of dataset texts and replies with the same batch. Datasets
+     * without text to fingerprint are left without one.
+     */
+    private void handleHashRequest(Message<HashBatch> message) {
+        metrics.recordQueueTime(message);
+        HashBatch batch = message.body();
+
+        for (int i = 0; i < batch.size(); i++) {
+            String title = batch.title(i);
+            String description = batch.description(i);
+
+            if (fingerprintText(title, description))
+                batch.setFingerprint(i, code[0], code[1], title.length() + description.length());
+            else
+                batch.skip(i);
+        }
+
+        message.reply(batch);
+    }
+
+    /**
+     * Fingerprints title and description into <code>code</code>.
+     *
+     * @return Whether there is text left to fingerprint once punctuation and stop words are removed.
+     */
+    private boolean fingerprintText(String title, String description) {
+        TextNormalizer normalizer = TextNormalizer.forCurrentThread();
+        normalizer.reset();
+        int sanitizedLength = normalizer.append(title);
+        normalizer.appendRaw("    ");
+        sanitizedLength += normalizer.append(description);
+
+        if (sanitizedLength == 0)
+            return false;
+
+        TlshHasher.hash(normalizer.text(), normalizer.length(), code, 0);
+        return true;
+    }
+}
@@ -0,0 +1,137 @@
+package de.fhg.fokus.edp.similarity_service;
+
+import java.util.Arrays;
+
+/**
+ * Best similarity hits of a scan.
+ * Every hit is packed into one long, distance in the high and ordinal in the low int,
+ * so that comparing hits orders by distance first and ordinal second.
+ * With a limit, hits are kept in a bounded max-heap whose root is the worst hit kept,
+ * so memory stays proportional to the limit no matter how many candidates match.
+ */
+final class HitList {
+
+    private final int limit;
+
+    private long[] hits;
+    private int size;
+    private long candidates;
+
+    /**
+     * @param limit Maximum number of hits to keep; 0 or less keeps all of them.
+     */
+    HitList(int limit) {
+        this.limit = limit;
+        this.hits = new long[limit > 0 ? Math.min(limit, 16) : 16];
+    }
+
+    /**
+     * Offers a hit. Must not be called after {@link #sort()}.
+     */
+    void add(int ordinal, int distance) {
+        long hit = (long) distance << 32 | ordinal;
+
+        if (limit <= 0 || size < limit) {
+            if (size == hits.length)
+                hits = Arrays.copyOf(hits, limit > 0 ? Math.min(2 * size, limit) : 2 * size);
+            hits[size++] = hit;
+            if (limit > 0)
+                siftUp(size - 1);
+        } else if (hit < hits[0]) {
+            hits[0] = hit;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Counts candidates considered for the list, whether they made it or not.
+     * Called once per range of candidates rather than per candidate.
+     */
+    void countCandidates(long count) {
+        candidates += count;
+    }
+
+    /**
+     * @return Number of candidates considered, summed over merged lists.
+     */
+    long candidates() {
+        return candidates;
+    }
+
+    /**
+     * Sorts hits in ascending distance, ties by ascending ordinal. Ends collection.
+     */
+    void sort() {
+        Arrays.sort(hits, 0, size);
+    }
+
+    /**
+     * Merges two sorted lists into a new sorted list of at most <code>limit</code> hits.
+     */
+    static HitList merge(HitList left, HitList right, int limit) {
+        int total = left.size + right.size;
+        int count = limit > 0 ? Math.min(limit, total) : total;
+
+        HitList merged = new HitList(limit);
+        merged.hits = new long[Math.max(count, 1)];
+        merged.candidates = left.candidates + right.candidates;
+
+        int l = 0, r = 0;
+        while (merged.size < count) {
+            if (r == right.size || (l < left.size && left.hits[l] < right.hits[r]))
+                merged.hits[merged.size++] = left.hits[l++];
+            else
+                merged.hits[merged.size++] = right.hits[r++];
+        }
+
+        return merged;
+    }
+
+    /**
+     * Only meaningful while collecting, i.e. before {@link #sort()}.
+     *
+     * @return Distance of the worst hit kept if the list is full, otherwise Integer.MAX_VALUE.
+     */
+    int worstDistance() {
+        return limit > 0 && size == limit ? (int) (hits[0] >>> 32) : Integer.MAX_VALUE;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int ordinal(int i) {
+        return (int) hits[i];
+    }
+
+    int distance(int i) {
+        return (int) (hits[i] >>> 32);
+    }
+
+    private void siftUp(int i) {
+        long hit = hits[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (hits[parent] >= hit)
+                break;
+            hits[i] = hits[parent];
+            i = parent;
+        }
+        hits[i] = hit;
+    }
+
+    private void siftDown(int i) {
+        long hit = hits[i];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && hits[child + 1] > hits[child])
+                child++;
+            if (hit >= hits[child])
+                break;
+            hits[i] = hits[child];
+            i = child;
+        }
+        hits[i] = hit;
+    }
+}
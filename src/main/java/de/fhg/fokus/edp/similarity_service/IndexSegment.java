@@ -0,0 +1,57 @@
+package de.fhg.fokus.edp.similarity_service;
+
+import java.nio.file.Path;
+
+/**
+ * Fingerprints of one fingerprint file, i.e. of one catalogue in one language, with their own
+ * ordinals and secondary index. Segments are built independently and never modified once built;
+ * a re-fingerprinted catalogue gets a new segment that replaces the old one as a whole.
+ */
+final class IndexSegment {
+
+    private final Path file;
+    private final FingerprintIndex fingerprints;
+    private final NeighbourIndex neighbourIndex;
+    private final long heapBytes;
+
+    private IndexSegment(Path file, FingerprintIndex fingerprints, NeighbourIndex neighbourIndex) {
+        this.file = file;
+        this.fingerprints = fingerprints;
+        this.neighbourIndex = neighbourIndex;
+        this.heapBytes = fingerprints.heapBytes() + (neighbourIndex != null ? neighbourIndex.heapBytes() : 0);
+    }
+
+    /**
+     * Builds a segment over <code>fingerprints</code>, which must not be modified afterwards.
+     *
+     * @param neighbourIndex Empty secondary index to build, or null for none.
+     */
+    static IndexSegment build(Path file, FingerprintIndex fingerprints, NeighbourIndex neighbourIndex) {
+        if (neighbourIndex != null)
+            neighbourIndex.build(fingerprints);
+
+        return new IndexSegment(file, fingerprints, neighbourIndex);
+    }
+
+    Path file() {
+        return file;
+    }
+
+    FingerprintIndex fingerprints() {
+        return fingerprints;
+    }
+
+    /**
+     * @return Secondary index over the fingerprints, or null for none.
+     */
+    NeighbourIndex neighbourIndex() {
+        return neighbourIndex;
+    }
+
+    /**
+     * @return Approximate heap taken by fingerprints and secondary index.
+     */
+    long heapBytes() {
+        return heapBytes;
+    }
+}
@@ -0,0 +1,136 @@
+package de.fhg.fokus.edp.similarity_service;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * State of the similarity index at one point in time, searched by any number of threads.
+ * Nothing reachable from a snapshot is modified once it is published; changes go into a new snapshot.
+ * <p>
+ * The index consists of one {@link IndexSegment} per fingerprint file. Datasets are addressed across
+ * segments by a global ordinal, the ordinal within their segment plus the number of datasets in all
+ * segments before it.
+ * <p>
+ * Every published change gets a new version; each file remembers the version its segment was last
+ * replaced or dropped in, which tells what changed between two snapshots.
+ */
+final class IndexSnapshot {
+
+    static final IndexSnapshot EMPTY = new IndexSnapshot(new IndexSegment[0], false, 0, Collections.emptyMap());
+
+    private final IndexSegment[] segments;
+    private final int[] bases;
+    private final int size;
+    private final boolean ready;
+    private final long version;
+    private final Map<Path, Long> fileVersions;
+
+    /**
+     * @param segments     Segments in ascending order of their files.
+     * @param ready        Whether the fingerprint files present at startup are indexed.
+     * @param fileVersions Version each file's segment was last replaced or dropped in, not modified afterwards.
+     */
+    IndexSnapshot(Collection<IndexSegment> segments, boolean ready, long version, Map<Path, Long> fileVersions) {
+        this(segments.toArray(new IndexSegment[0]), ready, version, fileVersions);
+    }
+
+    private IndexSnapshot(IndexSegment[] segments, boolean ready, long version, Map<Path, Long> fileVersions) {
+        this.segments = segments;
+        this.bases = new int[segments.length];
+        this.ready = ready;
+        this.version = version;
+        this.fileVersions = fileVersions;
+
+        int base = 0;
+        for (int i = 0; i < segments.length; i++) {
+            bases[i] = base;
+            base += segments[i].fingerprints().size();
+        }
+        this.size = base;
+    }
+
+    int segmentCount() {
+        return segments.length;
+    }
+
+    IndexSegment segment(int segment) {
+        return segments[segment];
+    }
+
+    /**
+     * @return Global ordinal of the first dataset of a segment.
+     */
+    int base(int segment) {
+        return bases[segment];
+    }
+
+    /**
+     * @return Segment holding the dataset with the given global ordinal.
+     */
+    int segmentOf(int ordinal) {
+        int segment = Arrays.binarySearch(bases, ordinal);
+        if (segment < 0)
+            return -segment - 2;
+
+        // skip empty segments sharing the base
+        while (segment + 1 < bases.length && bases[segment + 1] == ordinal)
+            segment++;
+        return segment;
+    }
+
+    /**
+     * @return Segment of a file, or null if the file has none.
+     */
+    IndexSegment segment(Path file) {
+        int low = 0, high = segments.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = segments[middle].file().compareTo(file);
+            if (comparison < 0)
+                low = middle + 1;
+            else if (comparison > 0)
+                high = middle - 1;
+            else
+                return segments[middle];
+        }
+        return null;
+    }
+
+    String uri(int ordinal) {
+        int segment = segmentOf(ordinal);
+        return segments[segment].fingerprints().uri(ordinal - bases[segment]);
+    }
+
+    /**
+     * @return Number of datasets over all segments; a dataset listed in several catalogues counts repeatedly.
+     */
+    int size() {
+        return size;
+    }
+
+    boolean ready() {
+        return ready;
+    }
+
+    long version() {
+        return version;
+    }
+
+    /**
+     * @return Files whose segment was replaced, added or dropped after the given version.
+     */
+    List<Path> changedSince(long version) {
+        List<Path> changed = new ArrayList<>();
+        if (version < this.version)
+            fileVersions.forEach((file, fileVersion) -> {
+                if (fileVersion > version)
+                    changed.add(file);
+            });
+        return changed;
+    }
+}
@@ -0,0 +1,114 @@
+package de.fhg.fokus.edp.similarity_service;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Precomputed <code>k</code> most similar datasets of every dataset of one {@link IndexSnapshot}, up to
+ * a maximum distance, as {@link KnnGraphBuilder} computes them. Never modified once built.
+ * <p>
+ * The neighbours of the datasets of a segment are kept in one adjacency structure per segment file: the
+ * rows of all datasets in ordinal order, each holding neighbours and their distances in the order a search
+ * reports them. A neighbour is addressed by the file of its segment and its ordinal within, so rows
+ * stay valid across snapshots as long as the segments they refer to do.
+ */
+final class KnnGraph {
+
+    private final long version;
+    private final int k;
+    private final int maxDistance;
+    private final Path[] files;
+    private final Map<Path, Rows> rows;
+
+    /**
+     * @param version Version of the snapshot the graph was computed for.
+     * @param files   Segment files by the slot neighbours refer to them with.
+     * @param rows    Rows per segment file, of every segment of the snapshot.
+     */
+    KnnGraph(long version, int k, int maxDistance, Path[] files, Map<Path, Rows> rows) {
+        this.version = version;
+        this.k = k;
+        this.maxDistance = maxDistance;
+        this.files = files;
+        this.rows = rows;
+    }
+
+    long version() {
+        return version;
+    }
+
+    int k() {
+        return k;
+    }
+
+    int maxDistance() {
+        return maxDistance;
+    }
+
+    /**
+     * @return Whether the rows hold the complete response to a query with the given bounds.
+     */
+    boolean supports(int limit, int minDistance, int maxDistance) {
+        return limit > 0 && limit <= k && minDistance <= 0 && maxDistance <= this.maxDistance;
+    }
+
+    /**
+     * @return Rows of the datasets of a segment file, or null if the file has no segment.
+     */
+    Rows rows(Path file) {
+        return rows.get(file);
+    }
+
+    Path[] files() {
+        return files;
+    }
+
+    Path file(long neighbour) {
+        return files[(int) (neighbour >>> 32)];
+    }
+
+    static int local(long neighbour) {
+        return (int) neighbour;
+    }
+
+    static long neighbour(int slot, int local) {
+        return (long) slot << 32 | local;
+    }
+
+    /**
+     * Neighbours of the datasets of one segment: those of dataset <code>i</code> at positions
+     * <code>[offsets[i], offsets[i + 1])</code>, packed into file slot and ordinal.
+     */
+    static final class Rows {
+
+        private final int[] offsets;
+        private final long[] neighbours;
+        private final int[] distances;
+
+        Rows(int[] offsets, long[] neighbours, int[] distances) {
+            this.offsets = offsets;
+            this.neighbours = neighbours;
+            this.distances = distances;
+        }
+
+        int size() {
+            return offsets.length - 1;
+        }
+
+        int start(int local) {
+            return offsets[local];
+        }
+
+        int end(int local) {
+            return offsets[local + 1];
+        }
+
+        long neighbour(int position) {
+            return neighbours[position];
+        }
+
+        int distance(int position) {
+            return distances[position];
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package de.fhg.fokus.edp.similarity_service;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes a {@link KnnGraph} for a snapshot: every dataset is searched for like a query with the graph's
+ * <code>k</code> as limit, so that its row equals the response to such a query.
+ * <p>
+ * Datasets are searched in blocks, each block in one pass over the candidates as a batch query does, and
+ * blocks run in parallel. Given the graph of an earlier snapshot, only what may have changed is searched:
+ * <ul>
+ * <li>datasets of segments changed since are searched in full,</li>
+ * <li>datasets with a neighbour in such a segment as well,</li>
+ * <li>all other datasets keep their neighbours, merged with the best hits within the changed segments.</li>
+ * </ul>
+ */
+final class KnnGraphBuilder {
+
+    /**
+     * Datasets searched together in one pass.
+     */
+    private static final int BLOCK_SIZE = 64;
+
+    private final IndexSnapshot snapshot;
+    private final KnnGraph previous;
+    private final int k;
+    private final int maxDistance;
+    private final SnapshotSearch search;
+
+    private final List<Path> files = new ArrayList<>();
+    private final int[] slots;
+    private final Map<Path, Integer> segmentIndexes = new HashMap<>();
+
+    /**
+     * Segments changed since the previous graph, and the slots of all files changed, including dropped ones.
+     */
+    private final int[] changedSegments;
+    private final Set<Integer> changedSlots = new HashSet<>();
+
+    private int searched;
+    private int merged;
+
+    /**
+     * @param previous Graph of an earlier snapshot to start from, or null to search all datasets.
+     *                 Ignored if built with another <code>k</code> or maximum distance.
+     * @param search   Search to use within each block; should scan sequentially, as blocks run in parallel.
+     */
+    KnnGraphBuilder(IndexSnapshot snapshot, KnnGraph previous, int k, int maxDistance, SnapshotSearch search) {
+        this.snapshot = snapshot;
+        this.k = k;
+        this.maxDistance = maxDistance;
+        this.search = search;
+        this.previous = previous != null && previous.k() == k && previous.maxDistance() == maxDistance
+            && previous.version() <= snapshot.version() ? previous : null;
+
+        Map<Path, Integer> slotsByFile = new HashMap<>();
+        if (this.previous != null)
+            for (Path file : this.previous.files()) {
+                slotsByFile.put(file, files.size());
+                files.add(file);
+            }
+
+        slots = new int[snapshot.segmentCount()];
+        for (int segment = 0; segment < snapshot.segmentCount(); segment++) {
+            Path file = snapshot.segment(segment).file();
+            segmentIndexes.put(file, segment);
+            slots[segment] = slotsByFile.computeIfAbsent(file, added -> {
+                files.add(added);
+                return files.size() - 1;
+            });
+        }
+
+        List<Integer> changed = new ArrayList<>();
+        if (this.previous != null)
+            for (Path file : snapshot.changedSince(this.previous.version())) {
+                Integer segment = segmentIndexes.get(file);
+                if (segment != null)
+                    changed.add(segment);
+                if (slotsByFile.containsKey(file))
+                    changedSlots.add(slotsByFile.get(file));
+            }
+        changedSegments = changed.stream().mapToInt(Integer::intValue).sorted().toArray();
+    }
+
+    /**
+     * @param pool Pool to run the blocks on.
+     */
+    KnnGraph build(ForkJoinPool pool) {
+        SegmentRows[] segmentRows = new SegmentRows[snapshot.segmentCount()];
+        List<Block> blocks = new ArrayList<>();
+
+        for (int segment = 0; segment < snapshot.segmentCount(); segment++) {
+            SegmentRows rows = new SegmentRows(segment);
+            segmentRows[segment] = rows;
+            KnnGraph.Rows previousRows = previous != null && Arrays.binarySearch(changedSegments, segment) < 0
+                ? previous.rows(snapshot.segment(segment).file())
+                : null;
+
+            int size = snapshot.segment(segment).fingerprints().size();
+            if (previousRows == null || previousRows.size() != size) {
+                addBlocks(blocks, rows, null, 0, size, false);
+                continue;
+            }
+
+            int[] stale = new int[size];
+            int[] kept = new int[size];
+            int staleCount = 0, keptCount = 0;
+            for (int local = 0; local < size; local++) {
+                if (refersToChanged(previousRows, local))
+                    stale[staleCount++] = local;
+                else
+                    kept[keptCount++] = local;
+            }
+
+            addBlocks(blocks, rows, stale, 0, staleCount, false);
+            if (changedSegments.length == 0) {
+                for (int i = 0; i < keptCount; i++)
+                    rows.copy(kept[i], previousRows);
+            } else {
+                rows.previousRows = previousRows;
+                addBlocks(blocks, rows, kept, 0, keptCount, true);
+            }
+        }
+
+        pool.invoke(new BlockTask(blocks, 0, blocks.size()));
+
+        Map<Path, KnnGraph.Rows> rows = new HashMap<>();
+        for (SegmentRows segment : segmentRows)
+            rows.put(snapshot.segment(segment.segment).file(), segment.compact());
+
+        return new KnnGraph(snapshot.version(), k, maxDistance, files.toArray(new Path[0]), rows);
+    }
+
+    /**
+     * @return Number of datasets searched in all segments.
+     */
+    int searched() {
+        return searched;
+    }
+
+    /**
+     * @return Number of datasets searched in the changed segments only, to merge with their previous neighbours.
+     */
+    int merged() {
+        return merged;
+    }
+
+    private boolean refersToChanged(KnnGraph.Rows rows, int local) {
+        for (int position = rows.start(local); position < rows.end(local); position++)
+            if (changedSlots.contains((int) (rows.neighbour(position) >>> 32)))
+                return true;
+        return false;
+    }
+
+    /**
+     * @param locals Ordinals to add, or null for <code>[from, to)</code> itself.
+     */
+    private void addBlocks(List<Block> blocks, SegmentRows rows, int[] locals, int from, int to, boolean merge) {
+        for (int start = from; start < to; start += BLOCK_SIZE) {
+            int end = Math.min(to, start + BLOCK_SIZE);
+            int[] block = new int[end - start];
+            for (int i = 0; i < block.length; i++)
+                block[i] = locals != null ? locals[start + i] : start + i;
+            blocks.add(new Block(rows, block, merge));
+        }
+
+        if (merge)
+            merged += to - from;
+        else
+            searched += to - from;
+    }
+
+    /**
+     * Rows of one segment under construction, <code>k</code> positions reserved per dataset.
+     */
+    private final class SegmentRows {
+
+        private final int segment;
+        private final long[] neighbours;
+        private final int[] distances;
+        private final int[] counts;
+        private KnnGraph.Rows previousRows;
+
+        SegmentRows(int segment) {
+            int size = snapshot.segment(segment).fingerprints().size();
+            this.segment = segment;
+            this.neighbours = new long[size * k];
+            this.distances = new int[size * k];
+            this.counts = new int[size];
+        }
+
+        void copy(int local, KnnGraph.Rows rows) {
+            int count = 0;
+            for (int position = rows.start(local); position < rows.end(local); position++) {
+                neighbours[local * k + count] = rows.neighbour(position);
+                distances[local * k + count++] = rows.distance(position);
+            }
+            counts[local] = count;
+        }
+
+        /**
+         * Takes the best hits of distinct datasets, as a query reports them.
+         *
+         * @param hits Hits by global ordinal, in ascending distance.
+         */
+        void fill(int local, HitList hits) {
+            Set<String> reported = new HashSet<>();
+            int count = 0;
+
+            for (int i = 0; i < hits.size() && count < k; i++) {
+                int ordinal = hits.ordinal(i);
+                if (reported.add(snapshot.uri(ordinal))) {
+                    int segment = snapshot.segmentOf(ordinal);
+                    neighbours[local * k + count] = KnnGraph.neighbour(slots[segment], ordinal - snapshot.base(segment));
+                    distances[local * k + count++] = hits.distance(i);
+                }
+            }
+            counts[local] = count;
+        }
+
+        /**
+         * Adds the previous neighbours of a dataset, all in unchanged segments, to hits by global ordinal.
+         */
+        void addPrevious(int local, HitList hits) {
+            for (int position = previousRows.start(local); position < previousRows.end(local); position++) {
+                long neighbour = previousRows.neighbour(position);
+                int segment = segmentIndexes.get(files.get((int) (neighbour >>> 32)));
+                hits.add(snapshot.base(segment) + KnnGraph.local(neighbour), previousRows.distance(position));
+            }
+        }
+
+        KnnGraph.Rows compact() {
+            int[] offsets = new int[counts.length + 1];
+            for (int local = 0; local < counts.length; local++)
+                offsets[local + 1] = offsets[local] + counts[local];
+
+            long[] packedNeighbours = new long[offsets[counts.length]];
+            int[] packedDistances = new int[offsets[counts.length]];
+            for (int local = 0; local < counts.length; local++) {
+                System.arraycopy(neighbours, local * k, packedNeighbours, offsets[local], counts[local]);
+                System.arraycopy(distances, local * k, packedDistances, offsets[local], counts[local]);
+            }
+
+            return new KnnGraph.Rows(offsets, packedNeighbours, packedDistances);
+        }
+    }
+
+    /**
+     * Datasets of one segment searched together, in all segments or, to merge with their previous
+     * neighbours, in the changed ones only.
+     */
+    private final class Block {
+
+        private final SegmentRows rows;
+        private final int[] locals;
+        private final boolean merge;
+
+        Block(SegmentRows rows, int[] locals, boolean merge) {
+            this.rows = rows;
+            this.locals = locals;
+            this.merge = merge;
+        }
+
+        void run() {
+            FingerprintIndex fingerprints = snapshot.segment(rows.segment).fingerprints();
+            FingerprintQuery[] queries = new FingerprintQuery[locals.length];
+            String[] datasetUris = new String[locals.length];
+
+            for (int i = 0; i < locals.length; i++) {
+                queries[i] = new FingerprintQuery(fingerprints, locals[i], 0, maxDistance, k);
+                datasetUris[i] = fingerprints.uri(locals[i]);
+            }
+
+            HitList[] hits = search.search(snapshot, merge ? changedSegments : null, queries, datasetUris);
+
+            for (int i = 0; i < locals.length; i++) {
+                if (merge) {
+                    HitList combined = new HitList(0);
+                    rows.addPrevious(locals[i], combined);
+                    for (int hit = 0; hit < hits[i].size(); hit++)
+                        combined.add(hits[i].ordinal(hit), hits[i].distance(hit));
+                    combined.sort();
+                    rows.fill(locals[i], combined);
+                } else {
+                    rows.fill(locals[i], hits[i]);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static final class BlockTask extends RecursiveAction {
+
+        private final List<Block> blocks;
+        private final int from;
+        private final int to;
+
+        BlockTask(List<Block> blocks, int from, int to) {
+            this.blocks = blocks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                if (from < to)
+                    blocks.get(from).run();
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new BlockTask(blocks, from, middle), new BlockTask(blocks, middle, to));
+        }
+    }
+}
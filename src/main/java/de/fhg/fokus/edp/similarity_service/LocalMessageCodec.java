@@ -0,0 +1,87 @@
+package de.fhg.fokus.edp.similarity_service;
+
+import de.fhg.fokus.edp.similarity_service.model.SimilarityBatchRequest;
+import de.fhg.fokus.edp.similarity_service.model.SimilarityRequest;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.MessageCodec;
+import io.vertx.core.json.Json;
+
+import java.util.function.Function;
+
+/**
+ * Passes message bodies by reference between verticles of the same Vert.x instance, without encoding
+ * them at all. The sender must not modify a body once sent. Only bodies crossing a clustered event bus
+ * are encoded, as a length-prefixed block of bytes.
+ */
+final class LocalMessageCodec<T> implements MessageCodec<T, T> {
+
+    /**
+     * Name of the codec for buffers, which the event bus would otherwise copy for every local delivery.
+     * Used with {@link #BUFFER_DELIVERY}; requests go by the default codecs of their classes.
+     */
+    static final String BUFFER = "localBuffer";
+
+    /**
+     * Options for sending or replying with a buffer by reference. Never modified.
+     */
+    static final DeliveryOptions BUFFER_DELIVERY = new DeliveryOptions().setCodecName(BUFFER);
+
+    private final String name;
+    private final Function<T, Buffer> encoder;
+    private final Function<Buffer, T> decoder;
+
+    private LocalMessageCodec(String name, Function<T, Buffer> encoder, Function<Buffer, T> decoder) {
+        this.name = name;
+        this.encoder = encoder;
+        this.decoder = decoder;
+    }
+
+    /**
+     * Registers the codecs of similarity requests and responses and of hash batches. Must be called once
+     * per Vert.x instance, before any of them is sent.
+     */
+    static void register(EventBus eventBus) {
+        registerJson(eventBus, SimilarityRequest.class);
+        registerJson(eventBus, SimilarityBatchRequest.class);
+        eventBus.registerDefaultCodec(HashBatch.class,
+            new LocalMessageCodec<>(HashBatch.class.getName(), HashBatch::toBuffer, HashBatch::fromBuffer));
+        eventBus.registerCodec(new LocalMessageCodec<Buffer>(BUFFER, Function.identity(), Function.identity()));
+    }
+
+    /**
+     * Registers the default codec of a class that Jackson encodes, for the wire.
+     */
+    private static <T> void registerJson(EventBus eventBus, Class<T> type) {
+        eventBus.registerDefaultCodec(type, new LocalMessageCodec<>(type.getName(),
+            Json::encodeToBuffer, buffer -> Json.decodeValue(buffer, type)));
+    }
+
+    @Override
+    public void encodeToWire(Buffer buffer, T body) {
+        Buffer encoded = encoder.apply(body);
+        buffer.appendInt(encoded.length()).appendBuffer(encoded);
+    }
+
+    @Override
+    public T decodeFromWire(int pos, Buffer buffer) {
+        int length = buffer.getInt(pos);
+        return decoder.apply(buffer.getBuffer(pos + 4, pos + 4 + length));
+    }
+
+    @Override
+    public T transform(T body) {
+        return body;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public byte systemCodecID() {
+        return -1;
+    }
+}
@@ -1,15 +1,18 @@
 package de.fhg.fokus.edp.similarity_service;
 
+import de.fhg.fokus.edp.similarity_service.model.SimilarityBatchRequest;
 import de.fhg.fokus.edp.similarity_service.model.SimilarityRequest;
+import io.prometheus.client.exporter.common.TextFormat;
 import io.vertx.config.ConfigRetriever;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.CompositeFuture;
 import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Future;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpMethod;
 import io.vertx.core.http.HttpServer;
 import io.vertx.core.http.HttpServerOptions;
-import io.vertx.core.json.Json;
+import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.Router;
@@ -32,12 +35,28 @@ public class MainVerticle extends AbstractVerticle {
 
     private static final Logger LOG = LoggerFactory.getLogger(MainVerticle.class);
 
+    /**
+     * Number of datasets of a batch request answered by one scan; the results are streamed scan by scan.
+     */
+    private static final int SIMILARITY_BATCH_SIZE = 64;
+
+    /**
+     * Largest number of datasets of a batch request, as documented in the API; larger ones are rejected
+     * rather than tying up the scans for long.
+     */
+    private static final int MAX_BATCH_DATASETS = 10_000;
+
     private JsonObject config;
     private ApiKeyHandler apiKeyHandler;
+    private ServiceMetrics metrics;
 
     @Override
     public void start() {
         LOG.info("Launching Dataset Similarity Service...");
+        metrics = ServiceMetrics.of(vertx);
+
+        // similarity queries and hash batches pass the event bus by reference
+        LocalMessageCodec.register(vertx.eventBus());
 
         // startup is only successful if no step failed
         Future<Void> steps = loadConfig()
@@ -100,8 +119,18 @@ public class MainVerticle extends AbstractVerticle {
             .setMaxWorkerExecuteTimeUnit(TimeUnit.MINUTES)
             .setWorker(true);
 
+        // CPU bound, one instance per core on a pool of their own; FingerprintVerticle rejects invalid values
+        int hashWorkers = Math.max(1, config.getInteger(ENV_HASH_WORKERS, DEFAULT_HASH_WORKERS));
+        DeploymentOptions hashOptions = new DeploymentOptions(options)
+            .setWorkerPoolName("hash-pool")
+            .setWorkerPoolSize(hashWorkers)
+            .setInstances(hashWorkers);
+
         List<Future> deploymentFutures = new ArrayList<>();
-        deploymentFutures.add(startVerticle(options, SimilarityVerticle.class.getName()));
+        deploymentFutures.add(startVerticle(new DeploymentOptions(options)
+                .setInstances(Math.max(1, config.getInteger(ENV_SIMILARITY_INSTANCES, DEFAULT_SIMILARITY_INSTANCES))),
+            SimilarityVerticle.class.getName()));
+        deploymentFutures.add(startVerticle(hashOptions, HashVerticle.class.getName()));
         deploymentFutures.add(startVerticle(options, FingerprintVerticle.class.getName()));
 
         return CompositeFuture.join(deploymentFutures);
@@ -119,11 +148,22 @@ public class MainVerticle extends AbstractVerticle {
 
                 routerFactory.addSecurityHandler("ApiKeyAuth", apiKeyHandler::checkApiKey);
 
+                // ahead of every operation, so that their responses carry the CORS headers as well
+                routerFactory.addGlobalHandler(CorsHandler.create("*")
+                    .allowedMethod(HttpMethod.GET)
+                    .allowedMethod(HttpMethod.POST)
+                    .allowedHeader("Content-Type")
+                    .allowedHeader("Access-Control-Allow-Origin: *"));
+
                 routerFactory.addHandlerByOperationId("fingerprintLanguages", this::handleFingerprintRequest);
                 routerFactory.addHandlerByOperationId("similaritiesForDataset", this::handleSimilarityRequest);
+                routerFactory.addHandlerByOperationId("similaritiesForDatasets", this::handleSimilarityBatchRequest);
+                routerFactory.addHandlerByOperationId("readiness", this::handleReadinessRequest);
+                routerFactory.addHandlerByOperationId("fingerprintStatus", this::handleFingerprintStatusRequest);
+                routerFactory.addHandlerByOperationId("cacheStatus", this::handleCacheStatusRequest);
+                routerFactory.addHandlerByOperationId("metrics", this::handleMetricsRequest);
 
                 Router router = routerFactory.getRouter();
-                router.route().handler(CorsHandler.create("*").allowedMethod(HttpMethod.GET).allowedHeader("Access-Control-Allow-Origin: *"));
                 router.route("/*").handler(StaticHandler.create());
 
                 HttpServer server = vertx.createHttpServer(new HttpServerOptions().setPort(port));
@@ -146,22 +186,85 @@ public class MainVerticle extends AbstractVerticle {
         context.response().setStatusCode(202).end();
     }
 
+    private void handleReadinessRequest(RoutingContext context) {
+        vertx.eventBus().send(ADDRESS_READINESS, "", sendHandler -> {
+            if (sendHandler.succeeded()) {
+                JsonObject readiness = new JsonObject((String) sendHandler.result().body());
+                context.response()
+                    .setStatusCode(readiness.getBoolean("ready") ? 200 : 503)
+                    .putHeader("Content-Type", "application/json")
+                    .end(readiness.encode());
+            } else {
+                context.response().setStatusCode(503).end();
+            }
+        });
+    }
+
+    private void handleFingerprintStatusRequest(RoutingContext context) {
+        vertx.eventBus().send(ADDRESS_CRAWL_STATUS, "", sendHandler -> {
+            if (sendHandler.succeeded()) {
+                context.response()
+                    .setStatusCode(200)
+                    .putHeader("Content-Type", "application/json")
+                    .end((String) sendHandler.result().body());
+            } else {
+                context.response().setStatusCode(500).end();
+            }
+        });
+    }
+
+    private void handleCacheStatusRequest(RoutingContext context) {
+        vertx.eventBus().send(ADDRESS_CACHE_STATUS, "", sendHandler -> {
+            if (sendHandler.succeeded()) {
+                context.response()
+                    .setStatusCode(200)
+                    .putHeader("Content-Type", "application/json")
+                    .end((String) sendHandler.result().body());
+            } else {
+                context.response().setStatusCode(500).end();
+            }
+        });
+    }
+
+    private void handleMetricsRequest(RoutingContext context) {
+        context.response()
+            .setStatusCode(200)
+            .putHeader("Content-Type", TextFormat.CONTENT_TYPE_004)
+            .end(metrics.scrape());
+    }
+
     private void handleSimilarityRequest(RoutingContext context) {
         String datasetId = context.pathParam("datasetId");
         List<String> limitList = context.queryParam("limit");
+        List<String> minDistanceList = context.queryParam("minDistance");
+        List<String> maxDistanceList = context.queryParam("maxDistance");
 
         if (datasetId != null
             && limitList.size() == 1
-            && StringUtils.isNumeric(limitList.get(0))) {
+            && StringUtils.isNumeric(limitList.get(0))
+            && isOptionalNumber(minDistanceList)
+            && isOptionalNumber(maxDistanceList)) {
+
+            int minDistance = minDistanceList.isEmpty() ? 0 : Integer.valueOf(minDistanceList.get(0));
+            int maxDistance = maxDistanceList.isEmpty()
+                ? config.getInteger(ENV_MAX_DISTANCE, DEFAULT_MAX_DISTANCE)
+                : Integer.valueOf(maxDistanceList.get(0));
+
+            if (minDistance > maxDistance) {
+                context.response().setStatusCode(400).end();
+                return;
+            }
 
             SimilarityRequest request =
-                new SimilarityRequest(datasetId, Integer.valueOf(limitList.get(0)));
+                new SimilarityRequest(datasetId, Integer.valueOf(limitList.get(0)), minDistance, maxDistance);
 
-            vertx.eventBus().send(ADDRESS_GET_SIMILARITY, Json.encode(request), sendHandler -> {
+            long start = System.nanoTime();
+            vertx.eventBus().send(ADDRESS_GET_SIMILARITY, request, ServiceMetrics.timedDelivery(), sendHandler -> {
+                metrics.recordRoundTrip(ADDRESS_GET_SIMILARITY, start);
                 if (sendHandler.succeeded()) {
                     context.response()
                         .setStatusCode(200)
-                        .end((String) sendHandler.result().body());
+                        .end((Buffer) sendHandler.result().body());
                 } else {
                     context.response().setStatusCode(500).end();
                 }
@@ -171,6 +274,75 @@ public class MainVerticle extends AbstractVerticle {
         }
     }
 
+    private void handleSimilarityBatchRequest(RoutingContext context) {
+        JsonObject body = context.getBodyAsJson();
+        JsonArray datasetIds = body.getJsonArray("datasetIds");
+        int limit = body.getInteger("limit");
+        int minDistance = body.getInteger("minDistance", 0);
+        int maxDistance = body.getInteger("maxDistance", config.getInteger(ENV_MAX_DISTANCE, DEFAULT_MAX_DISTANCE));
+
+        if (datasetIds.size() > MAX_BATCH_DATASETS || limit < 0 || minDistance < 0 || minDistance > maxDistance) {
+            context.response().setStatusCode(400).end();
+            return;
+        }
+
+        List<String> ids = new ArrayList<>();
+        datasetIds.forEach(id -> ids.add((String) id));
+
+        context.response()
+            .setStatusCode(200)
+            .setChunked(true)
+            .putHeader("Content-Type", "application/x-ndjson");
+
+        streamSimilarities(context, ids, 0, limit, minDistance, maxDistance);
+    }
+
+    /**
+     * Requests the similarities of the datasets from <code>from</code> on, {@link #SIMILARITY_BATCH_SIZE}
+     * at a time, and writes the lines of each batch as soon as they arrive. The next batch is only
+     * requested once the client keeps up.
+     */
+    private void streamSimilarities(RoutingContext context, List<String> datasetIds, int from, int limit, int minDistance, int maxDistance) {
+        HttpServerResponse response = context.response();
+        if (from >= datasetIds.size()) {
+            response.end();
+            return;
+        }
+
+        int to = Math.min(datasetIds.size(), from + SIMILARITY_BATCH_SIZE);
+        SimilarityBatchRequest request = new SimilarityBatchRequest(
+            new ArrayList<>(datasetIds.subList(from, to)), limit, minDistance, maxDistance);
+
+        long start = System.nanoTime();
+        vertx.eventBus().send(ADDRESS_GET_SIMILARITIES, request, ServiceMetrics.timedDelivery(), sendHandler -> {
+            metrics.recordRoundTrip(ADDRESS_GET_SIMILARITIES, start);
+            if (response.closed()) {
+                LOG.debug("Client left before the similarities of datasets [{}] to [{}] arrived", from, to);
+                return;
+            }
+
+            if (sendHandler.failed()) {
+                LOG.error("Failed to retrieve similarities of datasets [{}] to [{}]: {}", from, to, sendHandler.cause().getMessage());
+                if (from == 0)
+                    response.setStatusCode(500).end();
+                else
+                    // the status line is out already, an incomplete stream is all that is left to signal the failure
+                    response.close();
+                return;
+            }
+
+            response.write((Buffer) sendHandler.result().body());
+            if (response.writeQueueFull())
+                response.drainHandler(drained -> streamSimilarities(context, datasetIds, to, limit, minDistance, maxDistance));
+            else
+                streamSimilarities(context, datasetIds, to, limit, minDistance, maxDistance);
+        });
+    }
+
+    private static boolean isOptionalNumber(List<String> values) {
+        return values.isEmpty() || (values.size() == 1 && StringUtils.isNumeric(values.get(0)));
+    }
+
     private Future<Void> startVerticle(DeploymentOptions options, String className) {
         Future<Void> future = Future.future();
 
@@ -0,0 +1,30 @@
+package de.fhg.fokus.edp.similarity_service;
+
+/**
+ * Secondary index over a {@link FingerprintIndex} answering similarity queries without
+ * comparing against every dataset. Results must equal those of a full scan.
+ * Built once, then searched by several threads at a time; see {@link #build}.
+ */
+interface NeighbourIndex {
+
+    /**
+     * Indexes all fingerprints of <code>index</code>, which must not be modified afterwards.
+     * Called once, before the first search.
+     */
+    void build(FingerprintIndex index);
+
+    /**
+     * @return Whether {@link #search} gives exact results for this query; otherwise a full scan is needed.
+     */
+    boolean supports(FingerprintQuery query);
+
+    /**
+     * @return Hits in ascending distance, at most as many as the query's limit.
+     */
+    HitList search(FingerprintIndex index, FingerprintQuery query, DistanceKernel kernel);
+
+    /**
+     * @return Approximate heap taken by the index itself, without the fingerprint index.
+     */
+    long heapBytes();
+}
@@ -0,0 +1,209 @@
+package de.fhg.fokus.edp.similarity_service;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntConsumer;
+
+/**
+ * Splits the scan of a {@link FingerprintIndex} into shards of consecutive ordinals
+ * and runs them on a dedicated fork-join pool.
+ * Every shard keeps only its best <code>limit</code> hits in a bounded heap; shard results are merged
+ * pairwise. Since hits are ordered by distance and then ordinal, the result is
+ * identical to a sequential scan, including the order of ties.
+ * <p>
+ * Independent parts of a search, such as the segments of an index, are spread over the same pool by
+ * {@link #forEach}; scans started by a part split into shards on the pool as well.
+ */
+final class ParallelScan {
+
+    private final ForkJoinPool pool;
+    private final int shardSize;
+
+    /**
+     * @param parallelism Number of pool threads; 1 or less scans on the calling thread.
+     * @param shardSize   Number of ordinals below which a range is not split any further.
+     */
+    ParallelScan(int parallelism, int shardSize) {
+        this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        this.shardSize = Math.max(shardSize, 1);
+    }
+
+    /**
+     * Scans the whole index. The index must not be modified until this method returns.
+     *
+     * @return Hits in ascending distance, at most as many as the query's limit.
+     */
+    HitList scan(FingerprintIndex index, FingerprintQuery query, ScanEngine engine, DistanceKernel kernel) {
+        ShardTask task = new ShardTask(index, query, engine, kernel, 0, index.size());
+
+        return pool == null || index.size() <= shardSize
+            ? task.compute()
+            : invoke(task);
+    }
+
+    /**
+     * Scans the whole index for several queries in one pass, see
+     * {@link ScanEngine#scan(FingerprintIndex, int, int, FingerprintQuery[], DistanceKernel, HitList[])}.
+     * The index must not be modified until this method returns.
+     *
+     * @return Hits per query in ascending distance, at most as many as the query's limit.
+     */
+    HitList[] scan(FingerprintIndex index, FingerprintQuery[] queries, ScanEngine engine, DistanceKernel kernel) {
+        BatchShardTask task = new BatchShardTask(index, queries, engine, kernel, 0, index.size());
+
+        return pool == null || index.size() <= shardSize
+            ? task.compute()
+            : invoke(task);
+    }
+
+    /**
+     * Runs <code>part</code> for every index of <code>sizes</code>, in parallel on the pool. Consecutive
+     * parts whose sizes add up to no more than the shard size run together, one after the other.
+     * Returns once all parts are done, whose effects are then visible to the caller.
+     *
+     * @param sizes Number of fingerprints each part covers.
+     */
+    void forEach(int[] sizes, IntConsumer part) {
+        long[] ends = new long[sizes.length + 1];
+        for (int i = 0; i < sizes.length; i++)
+            ends[i + 1] = ends[i] + sizes[i];
+
+        PartTask task = new PartTask(ends, part, 0, sizes.length);
+        if (pool == null || ends[sizes.length] <= shardSize)
+            task.compute();
+        else
+            invoke(task);
+    }
+
+    void shutdown() {
+        if (pool != null)
+            pool.shutdown();
+    }
+
+    /**
+     * Runs a task on the pool; within the pool, such as from a part of {@link #forEach}, on the current thread.
+     */
+    private <T> T invoke(ForkJoinTask<T> task) {
+        return ForkJoinTask.getPool() == pool ? task.invoke() : pool.invoke(task);
+    }
+
+    @SuppressWarnings("serial")
+    private class PartTask extends RecursiveAction {
+
+        // ends[i] is the number of fingerprints of all parts before part i
+        private final long[] ends;
+        private final IntConsumer part;
+        private final int from;
+        private final int to;
+
+        PartTask(long[] ends, IntConsumer part, int from, int to) {
+            this.ends = ends;
+            this.part = part;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1 || ends[to] - ends[from] <= shardSize) {
+                for (int i = from; i < to; i++)
+                    part.accept(i);
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new PartTask(ends, part, from, middle), new PartTask(ends, part, middle, to));
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private class ShardTask extends RecursiveTask<HitList> {
+
+        private final FingerprintIndex index;
+        private final FingerprintQuery query;
+        private final ScanEngine engine;
+        private final DistanceKernel kernel;
+        private final int from;
+        private final int to;
+
+        ShardTask(FingerprintIndex index, FingerprintQuery query, ScanEngine engine, DistanceKernel kernel, int from, int to) {
+            this.index = index;
+            this.query = query;
+            this.engine = engine;
+            this.kernel = kernel;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected HitList compute() {
+            if (to - from <= shardSize) {
+                HitList hits = new HitList(query.getLimit());
+                engine.scan(index, from, to, query, kernel, hits);
+                hits.countCandidates(to - from);
+                hits.sort();
+                return hits;
+            }
+
+            int middle = (from + to) >>> 1;
+            ShardTask left = new ShardTask(index, query, engine, kernel, from, middle);
+            ShardTask right = new ShardTask(index, query, engine, kernel, middle, to);
+
+            left.fork();
+            HitList rightHits = right.compute();
+
+            return HitList.merge(left.join(), rightHits, query.getLimit());
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private class BatchShardTask extends RecursiveTask<HitList[]> {
+
+        private final FingerprintIndex index;
+        private final FingerprintQuery[] queries;
+        private final ScanEngine engine;
+        private final DistanceKernel kernel;
+        private final int from;
+        private final int to;
+
+        BatchShardTask(FingerprintIndex index, FingerprintQuery[] queries, ScanEngine engine, DistanceKernel kernel, int from, int to) {
+            this.index = index;
+            this.queries = queries;
+            this.engine = engine;
+            this.kernel = kernel;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected HitList[] compute() {
+            if (to - from <= shardSize) {
+                HitList[] hits = new HitList[queries.length];
+                for (int query = 0; query < queries.length; query++)
+                    hits[query] = new HitList(queries[query].getLimit());
+
+                engine.scan(index, from, to, queries, kernel, hits);
+
+                for (HitList queryHits : hits) {
+                    queryHits.countCandidates(to - from);
+                    queryHits.sort();
+                }
+                return hits;
+            }
+
+            int middle = (from + to) >>> 1;
+            BatchShardTask left = new BatchShardTask(index, queries, engine, kernel, from, middle);
+            BatchShardTask right = new BatchShardTask(index, queries, engine, kernel, middle, to);
+
+            left.fork();
+            HitList[] rightHits = right.compute();
+            HitList[] leftHits = left.join();
+
+            for (int query = 0; query < queries.length; query++)
+                leftHits[query] = HitList.merge(leftHits[query], rightHits[query], queries[query].getLimit());
+            return leftHits;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package de.fhg.fokus.edp.similarity_service;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Encoded responses to similarity queries, shared by all SimilarityVerticle instances of a Vert.x instance.
+ * Bounded by the approximate memory its entries take; the least recently used ones are evicted first.
+ * <p>
+ * Every entry is tied to the {@link IndexSnapshot#version() version} of the snapshot it was computed on.
+ * An entry from an older version is not stale as such: it only is if a segment changed since then could
+ * alter it, which the reader checks with what the entry records about how it came about.
+ */
+final class ResultCache implements Shareable {
+
+    private static final String MAP_NAME = "similarity";
+    private static final String KEY = "resultCache";
+
+    /**
+     * Approximate memory taken by an entry besides its response.
+     */
+    private static final int ENTRY_OVERHEAD = 160;
+
+    private final long capacity;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private ResultCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param capacity Approximate memory in bytes the entries may take; 0 or less disables the cache.
+     *                 Only the first caller's capacity applies.
+     * @return The cache shared within <code>vertx</code>, created by the first caller.
+     */
+    static ResultCache of(Vertx vertx, long capacity) {
+        LocalMap<String, ResultCache> map = vertx.sharedData().getLocalMap(MAP_NAME);
+        ResultCache cache = new ResultCache(capacity);
+        ResultCache existing = map.putIfAbsent(KEY, cache);
+        return existing != null ? existing : cache;
+    }
+
+    boolean enabled() {
+        return capacity > 0;
+    }
+
+    /**
+     * @return Entry for the query, of any version, or null if there is none.
+     */
+    synchronized Entry get(Key key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Adds an entry, unless there is one from a later version already.
+     */
+    synchronized void put(Key key, Entry entry) {
+        if (!enabled() || entry.weight() > capacity)
+            return;
+
+        Entry existing = entries.get(key);
+        if (existing != null) {
+            if (existing.version > entry.version)
+                return;
+            size -= existing.weight();
+        }
+
+        entries.put(key, entry);
+        size += entry.weight();
+
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (size > capacity) {
+            size -= eldest.next().weight();
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Drops an entry found stale, unless it has been replaced meanwhile.
+     */
+    synchronized void remove(Key key, Entry entry) {
+        if (entries.remove(key, entry))
+            size -= entry.weight();
+    }
+
+    void recordHit() {
+        hits.incrementAndGet();
+    }
+
+    void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    /**
+     * Counts an entry from an older version found still valid, which is also counted as a hit.
+     */
+    void recordRevalidation() {
+        revalidations.incrementAndGet();
+    }
+
+    synchronized int entryCount() {
+        return entries.size();
+    }
+
+    synchronized long size() {
+        return size;
+    }
+
+    long capacity() {
+        return capacity;
+    }
+
+    long hits() {
+        return hits.get();
+    }
+
+    long misses() {
+        return misses.get();
+    }
+
+    long revalidations() {
+        return revalidations.get();
+    }
+
+    long evictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Parameters of a similarity query.
+     */
+    static final class Key {
+
+        private final String datasetId;
+        private final int limit;
+        private final int minDistance;
+        private final int maxDistance;
+
+        Key(String datasetId, int limit, int minDistance, int maxDistance) {
+            this.datasetId = datasetId;
+            this.limit = limit;
+            this.minDistance = minDistance;
+            this.maxDistance = maxDistance;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key key = (Key) o;
+            return limit == key.limit
+                && minDistance == key.minDistance
+                && maxDistance == key.maxDistance
+                && datasetId.equals(key.datasetId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(datasetId, limit, minDistance, maxDistance);
+        }
+    }
+
+    /**
+     * Encoded response together with what is needed to tell whether later changes to the index affect it.
+     * The response is shared by everyone reading the entry and must not be modified.
+     */
+    static final class Entry {
+
+        private final Buffer response;
+        private final long version;
+        private final long hi;
+        private final long lo;
+        private final int length;
+        private final int bound;
+        private final Set<Path> sources;
+
+        /**
+         * @param version Version of the snapshot the response was computed on.
+         * @param query   Query the response answers, whose fingerprint must still be the same for the entry to be valid.
+         * @param bound   Largest distance a new hit may have to alter the response: the distance of the last
+         *                hit if the response is full, otherwise the maximum distance of the query.
+         * @param sources Files of the segments the reported hits were found in.
+         */
+        Entry(Buffer response, long version, FingerprintQuery query, int bound, Set<Path> sources) {
+            this(response, version, query.getHi(), query.getLo(), query.getLength(), bound, sources);
+        }
+
+        private Entry(Buffer response, long version, long hi, long lo, int length, int bound, Set<Path> sources) {
+            this.response = response;
+            this.version = version;
+            this.hi = hi;
+            this.lo = lo;
+            this.length = length;
+            this.bound = bound;
+            this.sources = sources;
+        }
+
+        /**
+         * @return The same entry, found valid for a later version.
+         */
+        Entry withVersion(long version) {
+            return new Entry(response, version, hi, lo, length, bound, sources);
+        }
+
+        Buffer response() {
+            return response;
+        }
+
+        long version() {
+            return version;
+        }
+
+        boolean answers(FingerprintQuery query) {
+            return query.getHi() == hi && query.getLo() == lo && query.getLength() == length;
+        }
+
+        int bound() {
+            return bound;
+        }
+
+        Set<Path> sources() {
+            return sources;
+        }
+
+        private long weight() {
+            return ENTRY_OVERHEAD + response.length() + 64L * sources.size();
+        }
+    }
+}
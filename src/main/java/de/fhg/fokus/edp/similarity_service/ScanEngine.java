@@ -0,0 +1,133 @@
+package de.fhg.fokus.edp.similarity_service;
+
+/**
+ * Linear scan of a range of ordinals of a {@link FingerprintIndex}, collecting every
+ * dataset other than the query itself whose distance lies within the query's bounds.
+ * Ordinals are scanned in ascending order, so once the hit list is full a candidate
+ * must be strictly closer than the worst hit kept; the radius shrinks accordingly.
+ */
+enum ScanEngine {
+
+    /**
+     * One candidate at a time; the bucket comparison is skipped when the length penalty
+     * alone exceeds the radius and cut short once the first word exceeds what is left.
+     */
+    SCALAR {
+        @Override
+        void scan(FingerprintIndex index, int from, int to, FingerprintQuery query, DistanceKernel kernel, HitList hits) {
+            long[] codes = index.codes();
+            int[] lengths = index.lengths();
+            long queryHi = query.getHi(), queryLo = query.getLo();
+            double lngLeft = query.getLength();
+            int radius = radius(query, hits);
+
+            // (following loop needs to be fast):
+            for (int ordinal = from; ordinal < to; ordinal++) {
+                int penalty = lengthPenalty(lngLeft, lengths[ordinal]);
+                if (penalty > radius || ordinal == query.getOrdinal()) // ... compare against all *other* datasets ...
+                    continue;
+
+                int distance = penalty
+                    + kernel.distance(queryHi ^ codes[2 * ordinal], queryLo ^ codes[2 * ordinal + 1], radius - penalty);
+
+                if (distance <= radius && distance >= query.getMinDistance()) {
+                    hits.add(ordinal, distance);
+                    radius = radius(query, hits);
+                }
+            }
+        }
+    },
+
+    /**
+     * Blocks of candidates, one pass per block for bucket distances, length penalties and
+     * filtering. The first two passes compute the full distance of every candidate, without
+     * the early exits of the scalar engine; only the filter pass checks the radius. On the
+     * synthetic data of DistanceBenchmark this is no faster than {@link #SCALAR}.
+     */
+    BATCH {
+        @Override
+        void scan(FingerprintIndex index, int from, int to, FingerprintQuery query, DistanceKernel kernel, HitList hits) {
+            long[] codes = index.codes();
+            int[] lengths = index.lengths();
+            long queryHi = query.getHi(), queryLo = query.getLo();
+            double lngLeft = query.getLength();
+            int minDistance = query.getMinDistance(), queryOrdinal = query.getOrdinal();
+            int radius = radius(query, hits);
+
+            int[] distances = new int[BLOCK_SIZE];
+
+            for (int block = from; block < to; block += BLOCK_SIZE) {
+                int count = Math.min(BLOCK_SIZE, to - block);
+
+                for (int i = 0; i < count; i++) {
+                    int ordinal = block + i;
+                    distances[i] = kernel.distance(queryHi ^ codes[2 * ordinal], queryLo ^ codes[2 * ordinal + 1]);
+                }
+
+                for (int i = 0; i < count; i++)
+                    distances[i] += lengthPenalty(lngLeft, lengths[block + i]);
+
+                for (int i = 0; i < count; i++)
+                    if (distances[i] <= radius && distances[i] >= minDistance && block + i != queryOrdinal) {
+                        hits.add(block + i, distances[i]);
+                        radius = radius(query, hits);
+                    }
+            }
+        }
+    };
+
+    /**
+     * Candidates per block of the batch engine; small enough for the scratch array to stay in L1.
+     */
+    private static final int BLOCK_SIZE = 256;
+
+    /**
+     * Candidates per block of a scan for several queries; the codes and lengths of a block, 80 KB,
+     * stay in the L2 cache while the block is compared against every query.
+     */
+    private static final int QUERY_BLOCK_SIZE = 4096;
+
+    abstract void scan(FingerprintIndex index, int from, int to, FingerprintQuery query, DistanceKernel kernel, HitList hits);
+
+    /**
+     * Scans a range for several queries at once, comparing each block of candidates against all queries
+     * before moving on to the next one, so that the candidates are read from memory once rather than once
+     * per query. Every hit list ends up the same as after a scan for its query alone.
+     *
+     * @param hits One hit list per query.
+     */
+    void scan(FingerprintIndex index, int from, int to, FingerprintQuery[] queries, DistanceKernel kernel, HitList[] hits) {
+        for (int block = from; block < to; block += QUERY_BLOCK_SIZE) {
+            int end = Math.min(to, block + QUERY_BLOCK_SIZE);
+
+            for (int query = 0; query < queries.length; query++)
+                scan(index, block, end, queries[query], kernel, hits[query]);
+        }
+    }
+
+    /**
+     * Resolves an engine by its case-insensitive name.
+     *
+     * @throws IllegalArgumentException if there is no such engine
+     */
+    static ScanEngine byName(String name) {
+        return valueOf(name.toUpperCase());
+    }
+
+    /**
+     * Largest distance a candidate may still have to make it into the hit list.
+     */
+    private static int radius(FingerprintQuery query, HitList hits) {
+        return Math.min(query.getMaxDistance(), hits.worstDistance() - 1);
+    }
+
+    /**
+     * Incorporates length comparison, because basic TLSH fingerprinting is length-agnostic.
+     */
+    static int lengthPenalty(double lngLeft, double lngRight) {
+        double x = Math.abs(lngLeft - lngRight) / Math.max(lngLeft, lngRight);
+
+        // now x is between 0.0 and 1.0 inclusively; polynomial weighting follows:
+        return (int) (48.0 * x * x * (-2.0 * x + 3.0));
+    }
+}
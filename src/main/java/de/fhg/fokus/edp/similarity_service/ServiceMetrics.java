@@ -0,0 +1,282 @@
+package de.fhg.fokus.edp.similarity_service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.JvmGcMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmMemoryMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmThreadMetrics;
+import io.micrometer.core.instrument.binder.system.ProcessorMetrics;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Meters of the service in one Prometheus registry, shared by all verticles of a Vert.x instance and
+ * scraped at <code>GET /metrics</code>.
+ * <p>
+ * Recording takes no more than a few atomic updates: meters are registered once and kept, or looked up
+ * by a tag value in a concurrent map, and the hot paths report once per query, page or message, never
+ * per candidate compared.
+ */
+final class ServiceMetrics implements Shareable {
+
+    private static final String MAP_NAME = "similarity";
+    private static final String KEY = "metrics";
+
+    /**
+     * Header holding {@link System#nanoTime()} at sending, to measure the time a message waits for its handler.
+     */
+    private static final String SENT_HEADER = "sent";
+
+    private final PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+
+    /**
+     * How a similarity query was answered.
+     */
+    enum Answer {
+        /**
+         * The dataset has no fingerprint.
+         */
+        UNKNOWN,
+        GRAPH,
+        CACHE,
+        SEARCH
+    }
+
+    private final Timer[] queries = new Timer[Answer.values().length];
+    private final Timer batches;
+    private final DistributionSummary candidates;
+    private final DistributionSummary hits;
+
+    private final Timer sparqlQueries;
+    private final Timer failedSparqlQueries;
+
+    private final ConcurrentMap<String, Counter> fingerprinted = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Timer> queueTimes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Timer> roundTrips = new ConcurrentHashMap<>();
+
+    private final AtomicLong indexDatasets = new AtomicLong();
+    private final AtomicLong indexVersion = new AtomicLong();
+    private final Map<Path, SegmentGauges> segments = new HashMap<>();
+
+    private ServiceMetrics() {
+        new JvmMemoryMetrics().bindTo(registry);
+        new JvmGcMetrics().bindTo(registry);
+        new JvmThreadMetrics().bindTo(registry);
+        new ProcessorMetrics().bindTo(registry);
+
+        for (Answer answer : Answer.values())
+            queries[answer.ordinal()] = Timer.builder("similarity.query")
+                .description("Time to answer a similarity query, from the start of its handler")
+                .tag("answer", answer.name().toLowerCase())
+                .publishPercentileHistogram()
+                .register(registry);
+        batches = Timer.builder("similarity.batch")
+            .description("Time to answer a batch of similarity queries")
+            .publishPercentileHistogram()
+            .register(registry);
+        candidates = DistributionSummary.builder("similarity.query.candidates")
+            .description("Candidates considered by a search, within all segments")
+            .publishPercentileHistogram()
+            .register(registry);
+        hits = DistributionSummary.builder("similarity.query.hits")
+            .description("Similar datasets reported for a search")
+            .register(registry);
+
+        sparqlQueries = sparqlTimer("success");
+        failedSparqlQueries = sparqlTimer("failure");
+
+        Gauge.builder("similarity.index.datasets", indexDatasets, AtomicLong::get)
+            .description("Datasets in the published index, counted once per segment listing them")
+            .register(registry);
+        Gauge.builder("similarity.index.version", indexVersion, AtomicLong::get)
+            .description("Version of the published index")
+            .register(registry);
+    }
+
+    /**
+     * @return The metrics shared within <code>vertx</code>, created by the first caller.
+     */
+    static ServiceMetrics of(Vertx vertx) {
+        LocalMap<String, ServiceMetrics> map = vertx.sharedData().getLocalMap(MAP_NAME);
+        ServiceMetrics metrics = map.get(KEY);
+        if (metrics != null)
+            return metrics;
+
+        // created once only, as the JVM meters register listeners that live as long as the JVM
+        synchronized (ServiceMetrics.class) {
+            metrics = map.get(KEY);
+            if (metrics == null) {
+                metrics = new ServiceMetrics();
+                map.put(KEY, metrics);
+            }
+            return metrics;
+        }
+    }
+
+    /**
+     * @return All meters in the Prometheus text format.
+     */
+    String scrape() {
+        return registry.scrape();
+    }
+
+    /**
+     * Records the time to answer a similarity query, from the start of its handler.
+     */
+    void recordQuery(Answer answer, long startNanos) {
+        queries[answer.ordinal()].record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records the width of a search, alone or as part of a batch.
+     */
+    void recordSearch(long candidateCount, int hitCount) {
+        candidates.record(candidateCount);
+        hits.record(hitCount);
+    }
+
+    void recordBatch(long startNanos) {
+        batches.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records the duration of a SPARQL query from sending it until its solutions are read.
+     */
+    void recordSparqlQuery(long startNanos, boolean succeeded) {
+        (succeeded ? sparqlQueries : failedSparqlQueries).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Counts datasets fingerprinted for a catalogue; their rate is the crawl throughput per catalogue.
+     */
+    void recordFingerprints(String langCode, String catalogueId, int count) {
+        String key = langCode + '_' + catalogueId;
+        Counter counter = fingerprinted.get(key);
+        if (counter == null)
+            counter = fingerprinted.computeIfAbsent(key, added -> Counter.builder("similarity.fingerprint.datasets")
+                .description("Datasets fingerprinted")
+                .tags("language", langCode, "catalogue", catalogueId)
+                .register(registry));
+        counter.increment(count);
+    }
+
+    /**
+     * @return Options for sending a message whose time until it is handled is recorded by {@link #recordQueueTime}.
+     */
+    static DeliveryOptions timedDelivery() {
+        return new DeliveryOptions().addHeader(SENT_HEADER, Long.toString(System.nanoTime()));
+    }
+
+    /**
+     * Records the time a message sent with {@link #timedDelivery()} waited until its handler started,
+     * mostly for a thread of the worker pool of the receiving verticle.
+     */
+    void recordQueueTime(Message<?> message) {
+        String sent = message.headers().get(SENT_HEADER);
+        if (sent != null)
+            timer(queueTimes, "similarity.eventbus.queue", "Time from sending a message until its handler starts", message.address())
+                .record(System.nanoTime() - Long.parseLong(sent), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records the time from sending a message until its reply arrived.
+     */
+    void recordRoundTrip(String address, long startNanos) {
+        timer(roundTrips, "similarity.eventbus.roundtrip", "Time from sending a message until its reply arrives", address)
+            .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Updates the meters of the index and of its segments to a newly published snapshot; meters of
+     * segments no longer present are removed.
+     */
+    synchronized void recordIndex(IndexSnapshot snapshot) {
+        indexDatasets.set(snapshot.size());
+        indexVersion.set(snapshot.version());
+
+        Map<Path, IndexSegment> current = new HashMap<>();
+        for (int segment = 0; segment < snapshot.segmentCount(); segment++)
+            current.put(snapshot.segment(segment).file(), snapshot.segment(segment));
+
+        for (Iterator<Map.Entry<Path, SegmentGauges>> gauges = segments.entrySet().iterator(); gauges.hasNext(); ) {
+            Map.Entry<Path, SegmentGauges> entry = gauges.next();
+            if (!current.containsKey(entry.getKey())) {
+                entry.getValue().remove();
+                gauges.remove();
+            }
+        }
+
+        current.forEach((file, segment) -> segments.computeIfAbsent(file, SegmentGauges::new).update(segment));
+    }
+
+    private Timer sparqlTimer(String outcome) {
+        return Timer.builder("similarity.sparql.query")
+            .description("Time from issuing a SPARQL query until its solutions are read")
+            .tag("outcome", outcome)
+            .publishPercentileHistogram()
+            .register(registry);
+    }
+
+    private Timer timer(ConcurrentMap<String, Timer> timers, String name, String description, String address) {
+        Timer timer = timers.get(address);
+        if (timer == null)
+            timer = timers.computeIfAbsent(address, added -> Timer.builder(name)
+                .description(description)
+                .tag("address", address)
+                .publishPercentileHistogram()
+                .register(registry));
+        return timer;
+    }
+
+    /**
+     * Size gauges of one segment file, holding the values of its latest segment.
+     */
+    private final class SegmentGauges {
+
+        private final AtomicLong datasets = new AtomicLong();
+        private final AtomicLong heapBytes = new AtomicLong();
+        private final Meter datasetGauge;
+        private final Meter heapGauge;
+
+        SegmentGauges(Path file) {
+            Tags tags = Tags.of("segment", String.valueOf(file.getFileName()));
+            datasetGauge = Gauge.builder("similarity.index.segment.datasets", datasets, AtomicLong::get)
+                .description("Datasets in a segment of the index")
+                .tags(tags)
+                .register(registry);
+            heapGauge = Gauge.builder("similarity.index.segment.heap", heapBytes, AtomicLong::get)
+                .description("Approximate heap taken by a segment of the index")
+                .baseUnit("bytes")
+                .tags(tags)
+                .register(registry);
+        }
+
+        void update(IndexSegment segment) {
+            datasets.set(segment.fingerprints().size());
+            heapBytes.set(segment.heapBytes());
+        }
+
+        void remove() {
+            registry.remove(datasetGauge);
+            registry.remove(heapGauge);
+        }
+    }
+}
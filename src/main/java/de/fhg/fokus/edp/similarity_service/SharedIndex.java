@@ -0,0 +1,72 @@
+package de.fhg.fokus.edp.similarity_service;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The current {@link IndexSnapshot}, shared by all SimilarityVerticle instances of a Vert.x instance.
+ * One of them claims the writer role and publishes a new snapshot after every change; the others
+ * only read, and a query keeps working on the snapshot it started with.
+ */
+final class SharedIndex implements Shareable {
+
+    private static final String MAP_NAME = "similarity";
+    private static final String KEY = "index";
+
+    private final AtomicReference<IndexSnapshot> current = new AtomicReference<>(IndexSnapshot.EMPTY);
+    private final AtomicReference<KnnGraph> graph = new AtomicReference<>();
+    private final AtomicBoolean writerClaimed = new AtomicBoolean();
+
+    private SharedIndex() {
+    }
+
+    /**
+     * @return The index shared within <code>vertx</code>, created by the first caller.
+     */
+    static SharedIndex of(Vertx vertx) {
+        LocalMap<String, SharedIndex> map = vertx.sharedData().getLocalMap(MAP_NAME);
+        SharedIndex index = new SharedIndex();
+        SharedIndex existing = map.putIfAbsent(KEY, index);
+        return existing != null ? existing : index;
+    }
+
+    IndexSnapshot current() {
+        return current.get();
+    }
+
+    /**
+     * Replaces the current snapshot. Only for the writer.
+     */
+    void publish(IndexSnapshot snapshot) {
+        current.set(snapshot);
+    }
+
+    /**
+     * @return Neighbour graph of the latest snapshot it was computed for, or null if there is none.
+     */
+    KnnGraph graph() {
+        return graph.get();
+    }
+
+    /**
+     * Replaces the neighbour graph. Only for the writer.
+     */
+    void publishGraph(KnnGraph graph) {
+        this.graph.set(graph);
+    }
+
+    /**
+     * @return Whether the caller became the writer; true for exactly one caller until it releases the role.
+     */
+    boolean claimWriter() {
+        return writerClaimed.compareAndSet(false, true);
+    }
+
+    void releaseWriter() {
+        writerClaimed.set(false);
+    }
+}
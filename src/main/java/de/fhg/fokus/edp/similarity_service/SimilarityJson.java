@@ -0,0 +1,159 @@
+package de.fhg.fokus.edp.similarity_service;
+
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * Writes similarity responses as UTF-8 JSON straight into a buffer, from the URIs and distances of the
+ * hits, without building response objects or intermediate strings. The output is the same Jackson gives
+ * for a list of <code>{uri, id, distance}</code> objects.
+ */
+final class SimilarityJson {
+
+    /**
+     * Response without any similar dataset. Never modified.
+     */
+    static final Buffer EMPTY = Buffer.buffer("[]");
+
+    private static final int BYTES_PER_SIMILARITY = 128;
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private final Buffer buffer;
+    private int count;
+    private int lastDistance;
+
+    /**
+     * @param expected Number of similarities expected, to size the buffer.
+     */
+    SimilarityJson(int expected) {
+        buffer = Buffer.buffer(2 + BYTES_PER_SIMILARITY * Math.max(expected, 1));
+        buffer.appendByte((byte) '[');
+    }
+
+    /**
+     * Adds a similar dataset, whose ID is the last path segment of its URI.
+     */
+    void add(String uri, int distance) {
+        if (count++ > 0)
+            buffer.appendByte((byte) ',');
+
+        appendAscii(buffer, "{\"uri\":");
+        appendString(buffer, uri, 0, uri.length());
+        appendAscii(buffer, ",\"id\":");
+        int slash = uri.lastIndexOf('/');
+        appendString(buffer, uri, slash < 0 ? uri.length() : slash + 1, uri.length());
+        appendAscii(buffer, ",\"distance\":");
+        appendInt(buffer, distance);
+        buffer.appendByte((byte) '}');
+        lastDistance = distance;
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * @return Distance of the similarity added last.
+     */
+    int lastDistance() {
+        return lastDistance;
+    }
+
+    /**
+     * @return The response; the writer must not be used anymore.
+     */
+    Buffer end() {
+        return buffer.appendByte((byte) ']');
+    }
+
+    /**
+     * Appends one line of a batch response: <code>{"id": datasetId, "similarities": response}</code>.
+     */
+    static void appendBatchLine(Buffer lines, String datasetId, Buffer response) {
+        appendAscii(lines, "{\"id\":");
+        appendString(lines, datasetId, 0, datasetId.length());
+        appendAscii(lines, ",\"similarities\":");
+        lines.appendBuffer(response);
+        appendAscii(lines, "}\n");
+    }
+
+    private static void appendAscii(Buffer buffer, String ascii) {
+        for (int i = 0; i < ascii.length(); i++)
+            buffer.appendByte((byte) ascii.charAt(i));
+    }
+
+    /**
+     * Appends <code>[from, to)</code> of a string as a JSON string, escaping quotes, backslashes and
+     * control characters as Jackson does.
+     */
+    private static void appendString(Buffer buffer, String value, int from, int to) {
+        buffer.appendByte((byte) '"');
+
+        for (int i = from; i < to; i++) {
+            char c = value.charAt(i);
+
+            if (c == '"' || c == '\\') {
+                buffer.appendByte((byte) '\\').appendByte((byte) c);
+            } else if (c < 0x20) {
+                appendControl(buffer, c);
+            } else if (c < 0x80) {
+                buffer.appendByte((byte) c);
+            } else if (c < 0x800) {
+                buffer.appendByte((byte) (0xc0 | c >> 6)).appendByte((byte) (0x80 | c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.appendByte((byte) (0xf0 | codePoint >> 18))
+                    .appendByte((byte) (0x80 | codePoint >> 12 & 0x3f))
+                    .appendByte((byte) (0x80 | codePoint >> 6 & 0x3f))
+                    .appendByte((byte) (0x80 | codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogate, replaced as String.getBytes does
+                buffer.appendByte((byte) '?');
+            } else {
+                buffer.appendByte((byte) (0xe0 | c >> 12))
+                    .appendByte((byte) (0x80 | c >> 6 & 0x3f))
+                    .appendByte((byte) (0x80 | c & 0x3f));
+            }
+        }
+
+        buffer.appendByte((byte) '"');
+    }
+
+    private static void appendControl(Buffer buffer, char c) {
+        buffer.appendByte((byte) '\\');
+        switch (c) {
+            case '\b':
+                buffer.appendByte((byte) 'b');
+                break;
+            case '\t':
+                buffer.appendByte((byte) 't');
+                break;
+            case '\n':
+                buffer.appendByte((byte) 'n');
+                break;
+            case '\f':
+                buffer.appendByte((byte) 'f');
+                break;
+            case '\r':
+                buffer.appendByte((byte) 'r');
+                break;
+            default:
+                appendAscii(buffer, "u00");
+                buffer.appendByte((byte) HEX_DIGITS[c >> 4]).appendByte((byte) HEX_DIGITS[c & 0xf]);
+        }
+    }
+
+    private static void appendInt(Buffer buffer, int value) {
+        if (value < 0) {
+            buffer.appendByte((byte) '-');
+            value = -value;
+        }
+
+        int divisor = 1;
+        while (value / divisor >= 10)
+            divisor *= 10;
+
+        for (; divisor > 0; divisor /= 10)
+            buffer.appendByte((byte) ('0' + value / divisor % 10));
+    }
+}
@@ -1,21 +1,28 @@
 package de.fhg.fokus.edp.similarity_service;
 
+import de.fhg.fokus.edp.similarity_service.model.SimilarityBatchRequest;
 import de.fhg.fokus.edp.similarity_service.model.SimilarityRequest;
-import de.fhg.fokus.edp.similarity_service.model.SimilarityResponse;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.eventbus.Message;
-import io.vertx.core.json.Json;
-import org.apache.commons.lang3.StringUtils;
+import io.vertx.core.json.JsonObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.xml.bind.DatatypeConverter;
-import java.io.*;
-import java.nio.file.Files;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
 import static de.fhg.fokus.edp.similarity_service.ApplicationConfig.*;
@@ -24,197 +31,614 @@ public class SimilarityVerticle extends AbstractVerticle {
 
     private static final Logger LOG = LoggerFactory.getLogger(SimilarityVerticle.class);
 
+    private static final String DATASET_URI_PREFIX = "https://europeandataportal.eu/set/data/";
+
     /**
-     * Each byte of a TLSH fingerprint contain 4 2-bit values.
-     * The difference between two such bytes x,y
-     * is rapidly determined by diffCount[(x^y)&255].
-     * Initialization in constructor; no alterations afterwards.
+     * Snapshot of the index searched by queries, shared with the other instances.
      */
-    private int[] diffCount = new int[256];
+    private SharedIndex sharedIndex;
+    private boolean writer;
 
     /**
-     * Assigns TLSH fingerprint and length of title+description to every URI.
-     * Initialization in constructor; no alterations afterwards.
+     * Responses to repeated queries, shared with the other instances.
      */
-    private HashMap<String, WithIntAttr<byte[]>> fingerprint = new HashMap<>();
+    private ResultCache resultCache;
+    private ServiceMetrics metrics;
+
+    private DistanceKernel kernel;
+    private ScanEngine scanEngine;
+    private SnapshotSearch search;
+
+    // state of the writer, which publishes a new snapshot after every change
 
-    private final int unitDist = 8;
+    /**
+     * One segment per fingerprint file, by absolute path.
+     */
+    private final Map<Path, IndexSegment> segments = new TreeMap<>();
+
+    /**
+     * Secondary index of every segment; queries it does not support fall back to a full scan.
+     */
+    private String searchIndex;
 
     private String sparqlUrl;
+    private String workDir;
 
+    /**
+     * Set once the fingerprint files present at startup are indexed.
+     */
+    private boolean ready;
+
+    /**
+     * Sequence numbers of the last load or update requested per file and of the last one applied.
+     * A segment is only replaced by one built from a later request than the current one.
+     */
+    private long loadSequence;
+    private final Map<Path, Long> requestedSequences = new HashMap<>();
+    private final Map<Path, Long> appliedSequences = new HashMap<>();
+
+    /**
+     * Version of the index, counting published changes, and the version each file's segment was last
+     * replaced or dropped in, by which cached responses tell whether they still hold.
+     */
+    private long indexVersion;
+    private final Map<Path, Long> fileVersions = new HashMap<>();
+
+    /**
+     * Number of neighbours per dataset of the precomputed graph, 0 for none, and the graph last published.
+     * One build runs at a time, starting from the previous graph; changes published meanwhile are caught up
+     * with by another build right after. All builds share one pool, shut down with the verticle.
+     */
+    private int graphK;
+    private KnnGraph graph;
+    private boolean graphBuilding;
+    private SnapshotSearch graphSearch;
+    private ForkJoinPool graphPool;
 
     @Override
     public void start(Future<Void> future) {
 
+        sparqlUrl = config().getString(ENV_SPARQL_URL, DEFAULT_SPARQL_URL);
+        workDir = config().getString(ENV_WORK_DIR, DEFAULT_WORK_DIR);
+
+        String kernelName = config().getString(ENV_DISTANCE_KERNEL, DEFAULT_DISTANCE_KERNEL);
+        try {
+            kernel = DistanceKernel.byName(kernelName);
+        } catch (IllegalArgumentException e) {
+            LOG.error("Unknown distance kernel [{}]", kernelName);
+            future.fail("Unknown distance kernel " + kernelName);
+            return;
+        }
+
+        String engineName = config().getString(ENV_SCAN_ENGINE, DEFAULT_SCAN_ENGINE);
+        try {
+            scanEngine = ScanEngine.byName(engineName);
+        } catch (IllegalArgumentException e) {
+            LOG.error("Unknown scan engine [{}]", engineName);
+            future.fail("Unknown scan engine " + engineName);
+            return;
+        }
+
+        search = new SnapshotSearch(kernel, scanEngine, new ParallelScan(
+            config().getInteger(ENV_SCAN_PARALLELISM, Runtime.getRuntime().availableProcessors()),
+            config().getInteger(ENV_SCAN_SHARD_SIZE, DEFAULT_SCAN_SHARD_SIZE)));
+
+        sharedIndex = SharedIndex.of(vertx);
+        resultCache = ResultCache.of(vertx, config().getLong(ENV_RESULT_CACHE_BYTES, DEFAULT_RESULT_CACHE_BYTES));
+        metrics = ServiceMetrics.of(vertx);
         vertx.eventBus().consumer(ADDRESS_GET_SIMILARITY, this::getSimilarity);
-        vertx.eventBus().consumer(ADDRESS_INDEX_CATALOGUE, this::handleIndexRequest);
+        vertx.eventBus().consumer(ADDRESS_GET_SIMILARITIES, this::getSimilarities);
+        vertx.eventBus().consumer(ADDRESS_READINESS, this::handleReadinessRequest);
+        vertx.eventBus().consumer(ADDRESS_CACHE_STATUS, this::handleCacheStatusRequest);
+
+        // all other instances only answer queries
+        writer = sharedIndex.claimWriter();
+        if (!writer) {
+            future.complete();
+            return;
+        }
 
-        sparqlUrl = config().getString(ENV_SPARQL_URL, DEFAULT_SPARQL_URL);
+        searchIndex = config().getString(ENV_SEARCH_INDEX, DEFAULT_SEARCH_INDEX);
+        try {
+            // validated once, every segment gets an index of its own
+            createNeighbourIndex(searchIndex);
+        } catch (IllegalArgumentException e) {
+            LOG.error("Invalid search index configuration [{}]: {}", searchIndex, e.getMessage());
+            future.fail("Invalid search index configuration " + searchIndex);
+            return;
+        }
 
-        // initialize diffCount array:
-        diffCount[0] = 0;
-        int length = 1;
-        do {
-            for (int i = 0; i < length; i++) {
-                //differentiate a bit:
-                diffCount[i + length] = diffCount[i + 3 * length] = diffCount[i] + unitDist;
-                diffCount[i + 2 * length] = diffCount[i] + unitDist + 2;
-            }
-            length *= 4;
-        } while (length < 256);
+        graphK = config().getInteger(ENV_KNN_GRAPH_K, DEFAULT_KNN_GRAPH_K);
+        if (graphK > 0) {
+            // blocks of datasets are searched in parallel, each of them on one thread
+            graphSearch = new SnapshotSearch(kernel, scanEngine, new ParallelScan(1, DEFAULT_SCAN_SHARD_SIZE));
+            graphPool = new ForkJoinPool(Math.max(1, config().getInteger(ENV_SCAN_PARALLELISM, Runtime.getRuntime().availableProcessors())));
+        }
+
+        vertx.eventBus().consumer(ADDRESS_INDEX_CATALOGUE, this::handleIndexRequest);
+        vertx.eventBus().consumer(ADDRESS_UPDATE_CATALOGUE, this::handleUpdateRequest);
+
+        // answer queries right away, with the index filling up in the background
+        loadFingerprintFiles();
 
         future.complete();
     }
 
+    @Override
+    public void stop() {
+        if (search != null)
+            search.shutdown();
+        if (graphPool != null)
+            graphPool.shutdown();
+        if (writer)
+            sharedIndex.releaseWriter();
+    }
+
     /**
      * Compare title+description of one dataset in EDP with all others.
      *
-     * @return Json array with hits up to distance 40, in ascending order.
+     * @return Json array with hits between the requested minimum and maximum distance, in ascending order.
      */
-    private void getSimilarity(Message<String> message) {
+    private void getSimilarity(Message<SimilarityRequest> message) {
+        long start = System.nanoTime();
+        metrics.recordQueueTime(message);
 
-        SimilarityRequest request = Json.decodeValue(message.body(), SimilarityRequest.class);
+        SimilarityRequest request = message.body();
         LOG.debug("Received {}", request);
 
-        String datasetUri = "https://europeandataportal.eu/set/data/" + request.getDatasetId();
-        List<SimilarityResponse> similarities = new ArrayList<>();
-        WithIntAttr<byte[]> comp = fingerprint.get(datasetUri);
-
-        if (comp != null) {
-
-            byte[] compLeft = comp.getVal();
-            ArrayList<WithIntAttr<String>> result = new ArrayList<>();
-
-            // Compare <datasetUri> against all other datasets,
-            // collecting results in ArrayList listRes.
-            // (following loop needs to be fast):
-            for (Map.Entry<String, WithIntAttr<byte[]>> curr : fingerprint.entrySet()) {
-                byte[] compRight = curr.getValue().getVal();
-                int distance
-                    = diffCount[(compLeft[0] ^ compRight[0]) & 255]
-                    + diffCount[(compLeft[1] ^ compRight[1]) & 255]
-                    + diffCount[(compLeft[2] ^ compRight[2]) & 255]
-                    + diffCount[(compLeft[3] ^ compRight[3]) & 255]
-                    + diffCount[(compLeft[4] ^ compRight[4]) & 255]
-                    + diffCount[(compLeft[5] ^ compRight[5]) & 255]
-                    + diffCount[(compLeft[6] ^ compRight[6]) & 255]
-                    + diffCount[(compLeft[7] ^ compRight[7]) & 255]
-                    + diffCount[(compLeft[8] ^ compRight[8]) & 255]
-                    + diffCount[(compLeft[9] ^ compRight[9]) & 255]
-                    + diffCount[(compLeft[10] ^ compRight[10]) & 255]
-                    + diffCount[(compLeft[11] ^ compRight[11]) & 255]
-                    + diffCount[(compLeft[12] ^ compRight[12]) & 255]
-                    + diffCount[(compLeft[13] ^ compRight[13]) & 255]
-                    + diffCount[(compLeft[14] ^ compRight[14]) & 255]
-                    + diffCount[(compLeft[15] ^ compRight[15]) & 255];
-                distance /= unitDist;    // cf. diffCount initialization in constructor
-
-                // incorporate length comparison (because basic TLSH fingerprinting is length-agnostic):
-                double lngLeft = comp.getAttr(), lngRight = curr.getValue().getAttr();
-                double x = Math.abs(lngLeft - lngRight) / Math.max(lngLeft, lngRight);
-
-                // now x is between 0.0 and 1.0 inclusively; polynomial weighting follows:
-                distance += (int) (48.0 * x * x * (-2.0 * x + 3.0));
-                if (distance <= 40 && !curr.getKey().equals(datasetUri)) // ... compare against all *other* datasets ...
-                    result.add(new WithIntAttr<>(curr.getKey(), distance));
-            }
-
-            // sort results in ascending distance:
-            Collections.sort(result);
+        // the whole query works on one snapshot, whatever is published meanwhile
+        IndexSnapshot snapshot = sharedIndex.current();
 
-            // only return list of IDs instead of entire URI
-            similarities.addAll(result.stream()
-                .limit(request.getLimit() > 0 ? request.getLimit() : fingerprint.size())
-                .map(curr ->
-                    new SimilarityResponse(curr.getVal(), StringUtils.substringAfterLast(curr.getVal(), "/"), curr.getAttr()))
-                .collect(Collectors.toList()));
+        String datasetUri = DATASET_URI_PREFIX + request.getDatasetId();
+        FingerprintQuery query = findQuery(snapshot, datasetUri,
+            request.getMinDistance(), request.getMaxDistance(), request.getLimit());
 
-        } else {
+        if (query == null) {
             LOG.debug("Could not find fingerprint for URI " + datasetUri);
+            message.reply(SimilarityJson.EMPTY, LocalMessageCodec.BUFFER_DELIVERY);
+            metrics.recordQuery(ServiceMetrics.Answer.UNKNOWN, start);
+            return;
+        }
+
+        Buffer response = graphResponse(snapshot, datasetUri,
+            request.getLimit(), request.getMinDistance(), request.getMaxDistance());
+        if (response != null) {
+            message.reply(response, LocalMessageCodec.BUFFER_DELIVERY);
+            metrics.recordQuery(ServiceMetrics.Answer.GRAPH, start);
+            return;
         }
 
-        message.reply(Json.encode(similarities));
+        ResultCache.Key key = new ResultCache.Key(
+            request.getDatasetId(), request.getLimit(), request.getMinDistance(), request.getMaxDistance());
+        response = cachedResponse(snapshot, key, query, datasetUri);
+        ServiceMetrics.Answer answer = ServiceMetrics.Answer.CACHE;
+
+        if (response == null) {
+            // Compare <datasetUri> against all other datasets; results in ascending distance:
+            HitList hits = search.search(snapshot, new FingerprintQuery[]{query}, new String[]{datasetUri})[0];
+            response = encodeResponse(snapshot, key, query, hits);
+            answer = ServiceMetrics.Answer.SEARCH;
+        }
+
+        message.reply(response, LocalMessageCodec.BUFFER_DELIVERY);
+        metrics.recordQuery(answer, start);
     }
 
-    private void handleIndexRequest(Message<String> message) {
-        vertx.fileSystem().exists(message.body(), existsHandler -> {
-            if (existsHandler.succeeded() && existsHandler.result()) {
-                indexFingerprintFile(Paths.get(message.body()));
-            } else {
-                LOG.error("Fingerprint file [{}] does not exist", message.body());
+    /**
+     * Compare title+description of several datasets with all others, in one scan for all of them
+     * that are not answered from the neighbour graph or the cache.
+     *
+     * @return One line of JSON per requested dataset, in the order of the request: its ID and its hits
+     * between the requested minimum and maximum distance, in ascending order.
+     */
+    private void getSimilarities(Message<SimilarityBatchRequest> message) {
+        long start = System.nanoTime();
+        metrics.recordQueueTime(message);
+
+        SimilarityBatchRequest request = message.body();
+        LOG.debug("Received {}", request);
+
+        IndexSnapshot snapshot = sharedIndex.current();
+
+        List<String> datasetIds = request.getDatasetIds();
+        Buffer[] responses = new Buffer[datasetIds.size()];
+        FingerprintQuery[] queries = new FingerprintQuery[datasetIds.size()];
+        String[] datasetUris = new String[datasetIds.size()];
+        int[] datasetOf = new int[datasetIds.size()];
+        int scanned = 0;
+
+        // datasets without fingerprint or with a precomputed or cached response take no part in the scan
+        for (int i = 0; i < datasetIds.size(); i++) {
+            String datasetUri = DATASET_URI_PREFIX + datasetIds.get(i);
+            FingerprintQuery query = findQuery(snapshot, datasetUri,
+                request.getMinDistance(), request.getMaxDistance(), request.getLimit());
+
+            if (query == null) {
+                LOG.debug("Could not find fingerprint for URI " + datasetUri);
+                responses[i] = SimilarityJson.EMPTY;
+                continue;
             }
-        });
+
+            responses[i] = graphResponse(snapshot, datasetUri,
+                request.getLimit(), request.getMinDistance(), request.getMaxDistance());
+            if (responses[i] == null)
+                responses[i] = cachedResponse(snapshot, cacheKey(request, datasetIds.get(i)), query, datasetUri);
+            if (responses[i] == null) {
+                queries[scanned] = query;
+                datasetUris[scanned] = datasetUri;
+                datasetOf[scanned++] = i;
+            }
+        }
+
+        HitList[] hits = search.search(snapshot, Arrays.copyOf(queries, scanned), Arrays.copyOf(datasetUris, scanned));
+        for (int query = 0; query < scanned; query++) {
+            int i = datasetOf[query];
+            responses[i] = encodeResponse(snapshot, cacheKey(request, datasetIds.get(i)), queries[query], hits[query]);
+        }
+
+        int length = 0;
+        for (Buffer response : responses)
+            length += response.length();
+
+        Buffer lines = Buffer.buffer(length + 64 * datasetIds.size());
+        for (int i = 0; i < datasetIds.size(); i++)
+            SimilarityJson.appendBatchLine(lines, datasetIds.get(i), responses[i]);
+
+        message.reply(lines, LocalMessageCodec.BUFFER_DELIVERY);
+        metrics.recordBatch(start);
     }
 
-    private void indexFingerprintFile(Path fingerprintFile) {
-        try (InputStreamReader sr = new InputStreamReader(new FileInputStream(fingerprintFile.toFile()))) {
-            StreamTokenizer tok = new StreamTokenizer(sr);
-            tok.quoteChar('"');
-            tok.parseNumbers();    //??
-            tok.eolIsSignificant(false);
+    /**
+     * Reads the response to a query from the neighbour graph, if there is one for the snapshot that holds
+     * all hits the query asks for.
+     *
+     * @return Encoded response, or null if the graph cannot answer the query.
+     */
+    private Buffer graphResponse(IndexSnapshot snapshot, String datasetUri, int limit, int minDistance, int maxDistance) {
+        KnnGraph graph = sharedIndex.graph();
+        if (graph == null || graph.version() != snapshot.version() || !graph.supports(limit, minDistance, maxDistance))
+            return null;
 
-            while (tok.nextToken() != StreamTokenizer.TT_EOF) {
-                if (tok.ttype != '"') {
-                    LOG.error("URI string expected in file [{}]", fingerprintFile.getFileName());
-                    break;
-                }
+        for (int segment = 0; segment < snapshot.segmentCount(); segment++) {
+            int local = snapshot.segment(segment).fingerprints().ordinalOf(datasetUri);
+            if (local < 0)
+                continue;
 
-                String uri = tok.sval;
-                tok.nextToken();
+            KnnGraph.Rows rows = graph.rows(snapshot.segment(segment).file());
+            SimilarityJson similarities = new SimilarityJson(Math.min(limit, rows.end(local) - rows.start(local)));
 
-                if (tok.ttype != '"') {
-                    LOG.error("Fingerprint string expected in file [{}]", fingerprintFile.getFileName());
+            for (int position = rows.start(local); position < rows.end(local) && similarities.size() < limit; position++) {
+                if (rows.distance(position) > maxDistance)
                     break;
-                }
 
-                if (tok.sval.length() != 32) {
-                    LOG.error("32 hex digits expected in file [{}]", fingerprintFile.getFileName());
-                    break;
-                }
+                long neighbour = rows.neighbour(position);
+                String uri = snapshot.segment(graph.file(neighbour)).fingerprints().uri(KnnGraph.local(neighbour));
+                similarities.add(uri, rows.distance(position));
+            }
+
+            return similarities.end();
+        }
 
-                byte[] bytes = DatatypeConverter.parseHexBinary(tok.sval);
+        return null;
+    }
 
-                if (tok.nextToken() != StreamTokenizer.TT_NUMBER) {
-                    LOG.error("Number expected in file [{}]", fingerprintFile.getFileName());
-                    break;
-                }
+    private static ResultCache.Key cacheKey(SimilarityBatchRequest request, String datasetId) {
+        return new ResultCache.Key(datasetId, request.getLimit(), request.getMinDistance(), request.getMaxDistance());
+    }
+
+    /**
+     * Looks up the response to a query in the cache. An entry computed on an older snapshot is used,
+     * and moved to the current version, if none of the segments changed since could alter it.
+     *
+     * @return Encoded response, or null if there is no valid one.
+     */
+    private Buffer cachedResponse(IndexSnapshot snapshot, ResultCache.Key key, FingerprintQuery query, String datasetUri) {
+        if (!resultCache.enabled())
+            return null;
 
-                int textLength = (int) tok.nval;
+        ResultCache.Entry entry = resultCache.get(key);
 
-                fingerprint.put(uri, new WithIntAttr<>(bytes, textLength));
+        if (entry != null && entry.version() < snapshot.version()) {
+            if (isUnaffected(snapshot, entry, query, datasetUri)) {
+                resultCache.put(key, entry.withVersion(snapshot.version()));
+                resultCache.recordRevalidation();
+            } else {
+                resultCache.remove(key, entry);
+                entry = null;
             }
-            LOG.debug("Successfully (re)loaded file [{}]", fingerprintFile.getFileName());
-        } catch (IOException e) {
-            LOG.error("Failed to read File [{}]", fingerprintFile.getFileName(), e);
         }
+
+        if (entry == null) {
+            resultCache.recordMiss();
+            return null;
+        }
+
+        resultCache.recordHit();
+        return entry.response();
     }
 
+    /**
+     * A cached response still holds if the queried fingerprint is the same, no reported hit comes from
+     * a segment changed since, and no segment changed since holds a hit that would make it into the response.
+     * Only the changed segments are searched; ties at the last reported distance count as a change.
+     */
+    private boolean isUnaffected(IndexSnapshot snapshot, ResultCache.Entry entry, FingerprintQuery query, String datasetUri) {
+        if (!entry.answers(query))
+            return false;
+
+        for (Path file : snapshot.changedSince(entry.version())) {
+            if (entry.sources().contains(file))
+                return false;
+
+            IndexSegment segment = snapshot.segment(file);
+            if (segment != null) {
+                HitList hits = search.searchSegment(segment, query.forOrdinal(segment.fingerprints().ordinalOf(datasetUri)));
+                if (hits.size() > 0 && hits.distance(0) <= entry.bound())
+                    return false;
+            }
+        }
+
+        return true;
+    }
 
     /**
-     * One-parameter generic class with two immutable fields,
-     * one of the generic parameter type,
-     * the other one of type integer.
+     * Encodes the response to a searched query, records the width of the search and caches the response.
      */
-    private class WithIntAttr<T> implements Comparable<WithIntAttr<T>> {
-        private T val;
-        private int attr;
+    private Buffer encodeResponse(IndexSnapshot snapshot, ResultCache.Key key, FingerprintQuery query, HitList hits) {
+        Set<Path> sources = new HashSet<>();
+        SimilarityJson similarities = similarities(snapshot, hits, query.getLimit(), sources);
+        int reported = similarities.size();
+        Buffer response = similarities.end();
+        metrics.recordSearch(hits.candidates(), reported);
+
+        if (resultCache.enabled()) {
+            int bound = query.getLimit() > 0 && reported >= query.getLimit()
+                ? similarities.lastDistance()
+                : query.getMaxDistance();
+            resultCache.put(key, new ResultCache.Entry(response, snapshot.version(), query, bound, sources));
+        }
+
+        return response;
+    }
 
-        WithIntAttr(T pk, int pa) {
-            val = pk;
-            attr = pa;
+    /**
+     * Only returns IDs instead of entire URIs; datasets listed in several catalogues only once.
+     *
+     * @param sources Collects the files of the segments the reported hits come from.
+     */
+    private static SimilarityJson similarities(IndexSnapshot snapshot, HitList hits, int limit, Set<Path> sources) {
+        SimilarityJson similarities = new SimilarityJson(limit > 0 ? Math.min(limit, hits.size()) : hits.size());
+        Set<String> reported = new HashSet<>();
+
+        for (int i = 0; i < hits.size() && (limit <= 0 || similarities.size() < limit); i++) {
+            String uri = snapshot.uri(hits.ordinal(i));
+            if (reported.add(uri)) {
+                similarities.add(uri, hits.distance(i));
+                sources.add(snapshot.segment(snapshot.segmentOf(hits.ordinal(i))).file());
+            }
         }
 
-        T getVal() {
-            return val;
+        return similarities;
+    }
+
+    /**
+     * @return Query for the fingerprint of the dataset in the first segment listing it, or null if none does.
+     */
+    private static FingerprintQuery findQuery(IndexSnapshot snapshot, String datasetUri, int minDistance, int maxDistance, int limit) {
+        for (int segment = 0; segment < snapshot.segmentCount(); segment++) {
+            FingerprintIndex fingerprints = snapshot.segment(segment).fingerprints();
+            int ordinal = fingerprints.ordinalOf(datasetUri);
+
+            if (ordinal >= 0)
+                return new FingerprintQuery(fingerprints, ordinal, minDistance, maxDistance, limit);
         }
 
-        int getAttr() {
-            return attr;
+        return null;
+    }
+
+    private NeighbourIndex createNeighbourIndex(String name) {
+        switch (name.toLowerCase()) {
+            case "scan":
+                return null;
+            case "chunk":
+                return new ChunkIndex(config().getInteger(ENV_CHUNK_COUNT, DEFAULT_CHUNK_COUNT));
+            case "bktree":
+                return new BkTreeIndex();
+            default:
+                throw new IllegalArgumentException("Unknown search index " + name);
         }
+    }
+
+    private void handleIndexRequest(Message<String> message) {
+        Path fingerprintFile = segmentKey(message.body());
+
+        vertx.fileSystem().exists(message.body(), existsHandler -> {
+            if (existsHandler.succeeded() && existsHandler.result()) {
+                indexFingerprintFile(fingerprintFile);
+            } else {
+                LOG.error("Fingerprint file [{}] does not exist", message.body());
+                requestedSequences.put(fingerprintFile, ++loadSequence);
+                replaceSegment(fingerprintFile, null, loadSequence);
+            }
+        });
+    }
 
-        @Override
-        public int compareTo(WithIntAttr<T> other) {
-            return attr - ((other).getAttr());
+    /**
+     * Applies the changes of an incrementally updated fingerprint file to a copy of its segment, without
+     * reading the file. If the file is still being loaded, or has no segment, it is loaded instead,
+     * as it is complete already.
+     */
+    private void handleUpdateRequest(Message<String> message) {
+        JsonObject update = new JsonObject(message.body());
+        Path fingerprintFile = segmentKey(update.getString("file"));
+        IndexSegment segment = segments.get(fingerprintFile);
+
+        if (segment == null || requestedSequences.getOrDefault(fingerprintFile, 0L) > appliedSequences.getOrDefault(fingerprintFile, 0L)) {
+            indexFingerprintFile(fingerprintFile);
+            return;
         }
+
+        long sequence = ++loadSequence;
+        requestedSequences.put(fingerprintFile, sequence);
+
+        vertx.<IndexSegment>executeBlocking(blocking -> {
+            FingerprintIndex fingerprints = segment.fingerprints().copy();
+
+            update.getJsonArray("removals").forEach(uri -> fingerprints.remove((String) uri));
+            update.getJsonArray("upserts").forEach(entry -> {
+                JsonObject record = (JsonObject) entry;
+                fingerprints.put(record.getString("uri"), record.getLong("hi"), record.getLong("lo"), record.getInteger("length"));
+            });
+
+            blocking.complete(IndexSegment.build(fingerprintFile, fingerprints, createNeighbourIndex(searchIndex)));
+        }, false, handler -> {
+            if (handler.succeeded()) {
+                replaceSegment(fingerprintFile, handler.result(), sequence);
+                LOG.debug("Applied [{}] changes and [{}] removals from file [{}]", update.getJsonArray("upserts").size(),
+                    update.getJsonArray("removals").size(), fingerprintFile);
+            } else {
+                LOG.error("Failed to apply changes to file [{}]", fingerprintFile.getFileName(), handler.cause());
+            }
+        });
+    }
+
+    private void handleReadinessRequest(Message<String> message) {
+        IndexSnapshot snapshot = sharedIndex.current();
+        message.reply(new JsonObject()
+            .put("ready", snapshot.ready())
+            .put("datasets", snapshot.size())
+            .encode());
+    }
+
+    private void handleCacheStatusRequest(Message<String> message) {
+        message.reply(new JsonObject()
+            .put("capacity", resultCache.capacity())
+            .put("size", resultCache.size())
+            .put("entries", resultCache.entryCount())
+            .put("hits", resultCache.hits())
+            .put("misses", resultCache.misses())
+            .put("revalidations", resultCache.revalidations())
+            .put("evictions", resultCache.evictions())
+            .encode());
+    }
+
+    /**
+     * Loads every fingerprint file already present in the work directory, in parallel,
+     * and reports readiness once all of them are indexed.
+     */
+    private void loadFingerprintFiles() {
+        vertx.fileSystem().readDir(workDir, FINGERPRINT_FILE_PATTERN, dirHandler -> {
+            if (dirHandler.failed()) {
+                LOG.info("No fingerprint files to load from [{}]: {}", workDir, dirHandler.cause().getMessage());
+                ready = true;
+                publish();
+                return;
+            }
+
+            List<Future<Void>> loads = dirHandler.result().stream()
+                .map(file -> indexFingerprintFile(segmentKey(file)))
+                .collect(Collectors.toList());
+
+            CompositeFuture.join(new ArrayList<>(loads)).setHandler(handler -> {
+                ready = true;
+                publish();
+                LOG.info("Loaded [{}] fingerprints from [{}] files in [{}]", sharedIndex.current().size(), loads.size(), workDir);
+            });
+        });
+    }
+
+    /**
+     * Reads a fingerprint file into a new segment on the worker pool, and swaps it in on this verticle's context.
+     * If a later load or update of the same file has been applied meanwhile, the segment is dropped.
+     */
+    private Future<Void> indexFingerprintFile(Path fingerprintFile) {
+        Future<Void> future = Future.future();
+        long sequence = ++loadSequence;
+        requestedSequences.put(fingerprintFile, sequence);
+
+        vertx.<IndexSegment>executeBlocking(blocking -> {
+            FingerprintIndex fileIndex = new FingerprintIndex();
+            try {
+                FingerprintFile.read(fingerprintFile, (uri, hi, lo, textLength) -> fileIndex.put(uri, hi, lo, textLength));
+                blocking.complete(IndexSegment.build(fingerprintFile, fileIndex, createNeighbourIndex(searchIndex)));
+            } catch (IOException e) {
+                blocking.fail(e);
+            }
+        }, false, handler -> {
+            if (handler.succeeded()) {
+                if (replaceSegment(fingerprintFile, handler.result(), sequence))
+                    LOG.debug("Successfully (re)loaded file [{}]", fingerprintFile.getFileName());
+                future.complete();
+            } else {
+                LOG.error("Failed to read File [{}]", fingerprintFile.getFileName(), handler.cause());
+                future.fail(handler.cause());
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Replaces the segment of a file and publishes the result, unless a later request for the file
+     * has been applied already. Empty segments are dropped.
+     *
+     * @param segment New segment, or null to drop the segment of the file.
+     * @return Whether the segment was replaced.
+     */
+    private boolean replaceSegment(Path fingerprintFile, IndexSegment segment, long sequence) {
+        if (appliedSequences.getOrDefault(fingerprintFile, 0L) >= sequence)
+            return false;
+
+        appliedSequences.put(fingerprintFile, sequence);
+        fileVersions.put(fingerprintFile, ++indexVersion);
+        if (segment == null || segment.fingerprints().size() == 0)
+            segments.remove(fingerprintFile);
+        else
+            segments.put(fingerprintFile, segment);
+
+        publish();
+        return true;
+    }
+
+    private void publish() {
+        sharedIndex.publish(new IndexSnapshot(segments.values(), ready, indexVersion, new HashMap<>(fileVersions)));
+        metrics.recordIndex(sharedIndex.current());
+        buildGraph();
+    }
+
+    /**
+     * Brings the neighbour graph up to date with the current snapshot on the worker pool, once the fingerprint
+     * files present at startup are indexed. Starts from the previous graph, so that only the datasets a change
+     * may affect are searched again.
+     */
+    private void buildGraph() {
+        IndexSnapshot snapshot = sharedIndex.current();
+        if (graphK <= 0 || graphBuilding || !snapshot.ready() || (graph != null && graph.version() == snapshot.version()))
+            return;
+
+        graphBuilding = true;
+        KnnGraphBuilder builder = new KnnGraphBuilder(snapshot, graph, graphK,
+            config().getInteger(ENV_MAX_DISTANCE, DEFAULT_MAX_DISTANCE), graphSearch);
+        long start = System.currentTimeMillis();
+
+        vertx.<KnnGraph>executeBlocking(blocking -> blocking.complete(builder.build(graphPool)), false, handler -> {
+            graphBuilding = false;
+            if (handler.succeeded()) {
+                graph = handler.result();
+                sharedIndex.publishGraph(graph);
+                LOG.info("Built neighbour graph of [{}] datasets in [{}] ms: [{}] searched, [{}] merged with changes",
+                    snapshot.size(), System.currentTimeMillis() - start, builder.searched(), builder.merged());
+                buildGraph();
+            } else {
+                LOG.error("Failed to build neighbour graph", handler.cause());
+            }
+        });
+    }
+
+    /**
+     * The same file may be referred to by relative and absolute paths.
+     */
+    private static Path segmentKey(String fingerprintFile) {
+        return Paths.get(fingerprintFile).toAbsolutePath().normalize();
     }
 }
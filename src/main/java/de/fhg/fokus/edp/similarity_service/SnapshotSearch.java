@@ -0,0 +1,111 @@
+package de.fhg.fokus.edp.similarity_service;
+
+import java.util.Arrays;
+
+/**
+ * Similarity search over the segments of an {@link IndexSnapshot}, by the secondary index of each segment
+ * where it supports a query and by a scan of the segment otherwise. Thread-safe.
+ */
+final class SnapshotSearch {
+
+    private final DistanceKernel kernel;
+    private final ScanEngine scanEngine;
+    private final ParallelScan parallelScan;
+
+    SnapshotSearch(DistanceKernel kernel, ScanEngine scanEngine, ParallelScan parallelScan) {
+        this.kernel = kernel;
+        this.scanEngine = scanEngine;
+        this.parallelScan = parallelScan;
+    }
+
+    /**
+     * Searches every segment for the best hits within it. Since a dataset occurs at most once per segment,
+     * the best <code>limit</code> datasets overall are among the hits, even after removing repeated URIs.
+     * Queries the secondary index of a segment does not support are answered by one scan of the segment together.
+     * Segments are searched in parallel, small ones together and large ones in shards.
+     *
+     * @param datasetUris URI of the dataset of each query.
+     * @return Hits of all segments per query by global ordinal, in ascending distance; a dataset listed in
+     * several catalogues may occur repeatedly.
+     */
+    HitList[] search(IndexSnapshot snapshot, FingerprintQuery[] queries, String[] datasetUris) {
+        return search(snapshot, null, queries, datasetUris);
+    }
+
+    /**
+     * Same as {@link #search(IndexSnapshot, FingerprintQuery[], String[])}, within some of the segments only.
+     *
+     * @param segments Segments to search, or null for all of them.
+     */
+    HitList[] search(IndexSnapshot snapshot, int[] segments, FingerprintQuery[] queries, String[] datasetUris) {
+        int segmentCount = segments != null ? segments.length : snapshot.segmentCount();
+        int[] sizes = new int[segmentCount];
+        for (int s = 0; s < segmentCount; s++)
+            sizes[s] = snapshot.segment(segments != null ? segments[s] : s).fingerprints().size();
+
+        HitList[][] segmentHits = new HitList[segmentCount][];
+        parallelScan.forEach(sizes, s -> segmentHits[s] =
+            searchSegment(snapshot.segment(segments != null ? segments[s] : s), queries, datasetUris));
+
+        HitList[] hits = new HitList[queries.length];
+        for (int query = 0; query < queries.length; query++) {
+            hits[query] = new HitList(0);
+            for (int s = 0; s < segmentCount; s++)
+                addHits(hits[query], segmentHits[s][query], snapshot.base(segments != null ? segments[s] : s));
+            hits[query].sort();
+        }
+        return hits;
+    }
+
+    /**
+     * @return Best hits within one segment per query, by ordinal within the segment, in ascending distance.
+     */
+    private HitList[] searchSegment(IndexSegment segment, FingerprintQuery[] queries, String[] datasetUris) {
+        FingerprintIndex fingerprints = segment.fingerprints();
+        NeighbourIndex neighbours = segment.neighbourIndex();
+
+        HitList[] hits = new HitList[queries.length];
+        FingerprintQuery[] scanQueries = new FingerprintQuery[queries.length];
+        int[] scanTargets = new int[queries.length];
+        int scanCount = 0;
+
+        for (int query = 0; query < queries.length; query++) {
+            FingerprintQuery segmentQuery = queries[query].forOrdinal(fingerprints.ordinalOf(datasetUris[query]));
+
+            if (neighbours != null && neighbours.supports(segmentQuery)) {
+                hits[query] = neighbours.search(fingerprints, segmentQuery, kernel);
+            } else {
+                scanQueries[scanCount] = segmentQuery;
+                scanTargets[scanCount++] = query;
+            }
+        }
+
+        if (scanCount > 0) {
+            HitList[] scanHits = parallelScan.scan(fingerprints, Arrays.copyOf(scanQueries, scanCount), scanEngine, kernel);
+            for (int i = 0; i < scanCount; i++)
+                hits[scanTargets[i]] = scanHits[i];
+        }
+        return hits;
+    }
+
+    /**
+     * @return Best hits within one segment, by ordinal within the segment, in ascending distance.
+     */
+    HitList searchSegment(IndexSegment segment, FingerprintQuery query) {
+        NeighbourIndex neighbours = segment.neighbourIndex();
+
+        return neighbours != null && neighbours.supports(query)
+            ? neighbours.search(segment.fingerprints(), query, kernel)
+            : parallelScan.scan(segment.fingerprints(), query, scanEngine, kernel);
+    }
+
+    void shutdown() {
+        parallelScan.shutdown();
+    }
+
+    private static void addHits(HitList hits, HitList segmentHits, int base) {
+        hits.countCandidates(segmentHits.candidates());
+        for (int i = 0; i < segmentHits.size(); i++)
+            hits.add(base + segmentHits.ordinal(i), segmentHits.distance(i));
+    }
+}
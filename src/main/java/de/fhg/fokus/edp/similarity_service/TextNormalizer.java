@@ -0,0 +1,241 @@
+package de.fhg.fokus.edp.similarity_service;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Prepares title and description of a dataset for fingerprinting: removes ASCII punctuation except
+ * double quotes, turns double quotes into single quotes, lowercases and removes English stop words.
+ * <p>
+ * The text is written into a reused char buffer, one mapping pass followed by one in-place scan
+ * for stop words, instead of building a String per step. Results are identical to
+ * <pre>
+ * StringUtils.replaceEach(input.replaceAll("(?!\")\\p{Punct}", "").replaceAll("\"", "'").toLowerCase(),
+ *     ENGLISH_STOP_WORDS_L_1, emptyStrings)
+ * </pre>
+ * including its substring semantics: stop words are removed wherever they occur, not only as whole
+ * words; of the stop words found at the leftmost position the first one in the list is removed, and
+ * the search resumes behind it.
+ * Inputs whose lowercase form depends on context or locale (capital dotted I, capital sigma, unpaired
+ * surrogates, or a Turkish, Azerbaijani or Lithuanian default locale) take the String based route.
+ * <p>
+ * Not thread safe; every thread uses its own instance through {@link #forCurrentThread()}.
+ */
+final class TextNormalizer {
+
+    /**
+     * English stop words, those to be removed from strings before fingerprinting.
+     * Only very few, in order not to destroy relevant semantics.
+     */
+    private static final String[] ENGLISH_STOP_WORDS_L_1 = new String[]{
+        "it", "there", "if", "of",
+        // conjunctions:
+        "and", "so", "yet", "or", "moreover", "also", "too", "thus", "hence", "therefore", "furthermore", "likewise",
+        // determiners:
+        "a", "an", "the", "other", "another", "some", "any", "its", "their", "such",
+        "all", "every", "each",    // but retain one, same, many and most
+        //verbs:
+        "is", "are", "be", "was", "were", "been", "do", "does", "did", "will", "would",
+        // but retain can…, may…, shall…, must
+        // foreign:
+        "la", "der", "y", "de"
+    };
+
+    private static final String[] NO_STOP_WORDS = new String[ENGLISH_STOP_WORDS_L_1.length];
+
+    /**
+     * Trie over the stop words, which consist of the letters a to z only.
+     * Node 0 is the root; STOP_WORD_TRIE[node * 26 + letter] is the child node or 0 for none,
+     * STOP_WORD_INDEX[node] the list position of the stop word ending at the node or NO_STOP_WORD.
+     */
+    private static final int[] STOP_WORD_TRIE;
+    private static final int[] STOP_WORD_INDEX;
+    private static final int NO_STOP_WORD = Integer.MAX_VALUE;
+
+    private static final ThreadLocal<TextNormalizer> INSTANCES = ThreadLocal.withInitial(TextNormalizer::new);
+
+    static {
+        Arrays.fill(NO_STOP_WORDS, "");
+
+        int nodeCount = 1;
+        for (String word : ENGLISH_STOP_WORDS_L_1)
+            nodeCount += word.length();
+
+        int[] trie = new int[nodeCount * 26];
+        int[] index = new int[nodeCount];
+        Arrays.fill(index, NO_STOP_WORD);
+
+        int nodes = 1;
+        for (int i = 0; i < ENGLISH_STOP_WORDS_L_1.length; i++) {
+            int node = 0;
+            for (char c : ENGLISH_STOP_WORDS_L_1[i].toCharArray()) {
+                int edge = node * 26 + (c - 'a');
+                if (trie[edge] == 0)
+                    trie[edge] = nodes++;
+                node = trie[edge];
+            }
+            index[node] = Math.min(index[node], i);
+        }
+
+        STOP_WORD_TRIE = trie;
+        STOP_WORD_INDEX = index;
+    }
+
+    private char[] text = new char[1024];
+    private int length;
+
+    private TextNormalizer() {
+    }
+
+    static TextNormalizer forCurrentThread() {
+        return INSTANCES.get();
+    }
+
+    /**
+     * Empties the text.
+     */
+    void reset() {
+        length = 0;
+    }
+
+    /**
+     * Appends the normalized form of <code>input</code> to the text.
+     *
+     * @return Number of chars appended.
+     */
+    int append(String input) {
+        int start = length;
+
+        if (needsSpecialCasing(input)) {
+            appendRaw(legacyNormalize(input));
+            return length - start;
+        }
+
+        ensureCapacity(start + 2 * input.length());
+
+        // map chars: drop punctuation, replace double quotes, lowercase
+        char[] out = text;
+        int end = start;
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+
+            if (c < 128) {
+                if (c == '"')
+                    out[end++] = '\'';
+                else if (!isPunct(c))
+                    out[end++] = c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+            } else {
+                int codePoint = input.codePointAt(i);
+                end += Character.toChars(Character.toLowerCase(codePoint), out, end);
+                i += Character.charCount(codePoint) - 1;
+            }
+        }
+
+        length = removeStopWords(out, start, end);
+        return length - start;
+    }
+
+    /**
+     * Appends <code>input</code> as it is.
+     */
+    void appendRaw(String input) {
+        ensureCapacity(length + input.length());
+        input.getChars(0, input.length(), text, length);
+        length += input.length();
+    }
+
+    /**
+     * @return The buffer holding the text in its first {@link #length()} chars; replaced when it grows.
+     */
+    char[] text() {
+        return text;
+    }
+
+    int length() {
+        return length;
+    }
+
+    /**
+     * Removes stop words from <code>buffer[start, end)</code> in place.
+     *
+     * @return New end of the text.
+     */
+    private static int removeStopWords(char[] buffer, int start, int end) {
+        int write = start;
+        int read = start;
+
+        while (read < end) {
+            int stopWordLength = 0;
+            int stopWordIndex = NO_STOP_WORD;
+
+            // walk the trie as far as the text allows, keeping the first listed stop word passed
+            int node = 0;
+            for (int i = read; i < end; i++) {
+                int letter = buffer[i] - 'a';
+                if (letter < 0 || letter >= 26 || (node = STOP_WORD_TRIE[node * 26 + letter]) == 0)
+                    break;
+                if (STOP_WORD_INDEX[node] < stopWordIndex) {
+                    stopWordIndex = STOP_WORD_INDEX[node];
+                    stopWordLength = i + 1 - read;
+                }
+            }
+
+            if (stopWordLength > 0)
+                read += stopWordLength;
+            else
+                buffer[write++] = buffer[read++];
+        }
+
+        return write;
+    }
+
+    /**
+     * Same as POSIX \p{Punct}: ASCII punctuation and symbols.
+     */
+    private static boolean isPunct(char c) {
+        return (c >= '!' && c <= '/') || (c >= ':' && c <= '@') || (c >= '[' && c <= '`') || (c >= '{' && c <= '~');
+    }
+
+    /**
+     * @return Whether String.toLowerCase does more than lowercasing char by char.
+     */
+    private static boolean needsSpecialCasing(String input) {
+        String language = Locale.getDefault().getLanguage();
+        if ("tr".equals(language) || "az".equals(language) || "lt".equals(language))
+            return true;
+
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            // capital I with dot above, capital sigma
+            if (c == '\u0130' || c == '\u03A3')
+                return true;
+            // an unpaired surrogate may pair up once punctuation between the halves is removed
+            if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < input.length() && Character.isLowSurrogate(input.charAt(i + 1)))
+                    i++;
+                else
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The String based route, which {@link #append(String)} yields the same results as.
+     */
+    static String legacyNormalize(String input) {
+        return StringUtils.replaceEach( // remove english stop words
+            input.replaceAll("(?!\")\\p{Punct}", "") // remove punctuation except double quotes
+                .replaceAll("\"", "'") // replace double quotes with single quotes
+                .toLowerCase(),
+            ENGLISH_STOP_WORDS_L_1,
+            NO_STOP_WORDS);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > text.length)
+            text = Arrays.copyOf(text, Math.max(capacity, 2 * text.length));
+    }
+}
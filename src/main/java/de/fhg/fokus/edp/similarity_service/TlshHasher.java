@@ -0,0 +1,178 @@
+package de.fhg.fokus.edp.similarity_service;
+
+/**
+ * Computes TLSH fingerprints of normalized text.
+ * <p>
+ * Every 5-char window of the text adds six Pearson hashed triples to 64 buckets; each bucket is then
+ * encoded in 2 bits by its count relative to the quartiles of all counts. The 128 bit code is packed
+ * into two words, bucket 0 in the highest bits of the first one, as kept by {@link FingerprintIndex}.
+ * <p>
+ * Stateless: the bucket counts live in caller supplied scratch, or in a scratch array per thread,
+ * so any number of threads may hash at the same time.
+ */
+final class TlshHasher {
+
+    /**
+     * Number of buckets for TLSH.
+     * Originally 256; reduced to account for shorter strings.
+     */
+    static final int N_BUCKETS = 64;
+
+    /**
+     * Size of the scratch array {@link #hash(char[], int, long[], int, int[])} needs.
+     */
+    static final int SCRATCH_SIZE = 2 * N_BUCKETS;
+
+    /**
+     * Minimum text length.
+     */
+    static final int MIN_LENGTH = 5;
+
+    private static final ThreadLocal<int[]> SCRATCH = ThreadLocal.withInitial(() -> new int[SCRATCH_SIZE]);
+
+    private TlshHasher() {
+    }
+
+    /**
+     * Same as {@link #hash(char[], int, long[], int, int[])} with scratch of the current thread.
+     */
+    static void hash(char[] text, int length, long[] code, int offset) {
+        hash(text, length, code, offset, SCRATCH.get());
+    }
+
+    /**
+     * Computes the fingerprint of the first <code>length</code> chars of <code>text</code> and stores
+     * its high and low word in <code>code[offset]</code> and <code>code[offset + 1]</code>.
+     *
+     * @param length  At least {@link #MIN_LENGTH}.
+     * @param scratch At least {@link #SCRATCH_SIZE} ints, overwritten.
+     */
+    static void hash(char[] text, int length, long[] code, int offset, int[] scratch) {
+        if (length < MIN_LENGTH)
+            throw new IllegalArgumentException("TLSH needs at least " + MIN_LENGTH + " chars, got " + length);
+
+        int i;
+
+        //reset counters:
+        for (i = 0; i < N_BUCKETS; i++)
+            scratch[i] = 0;
+
+        //initialize sliding 5-char window:
+        int c0 = text[0], c1 = text[1], c2 = text[2], c3 = text[3], c4 = text[4];
+
+        i = 5;
+
+        while (true) {
+            scratch[pearson3b(c0, c1, c2)]++;
+            scratch[pearson3b(c0, c3, c1)]++;
+            scratch[pearson3b(c1, c0, c4)]++;
+            scratch[pearson3b(c3, c2, c0)]++;
+            scratch[pearson3b(c4, c0, c2)]++;
+            scratch[pearson3b(c3, c4, c0)]++;
+
+            //exit when end of string reached:
+            if (i >= length)
+                break;
+
+            // slide window forward:
+            c0 = c1;
+            c1 = c2;
+            c2 = c3;
+            c3 = c4;
+            c4 = text[i];
+            i++;
+        }
+
+        // do remaining 4 triples:
+        scratch[pearson3b(c1, c2, c3)]++;
+        scratch[pearson3b(c1, c4, c2)]++;
+        scratch[pearson3b(c4, c3, c1)]++;
+        scratch[pearson3b(c2, c3, c4)]++;
+
+        // quartiles, the counts at positions 16, 32 and 48 in sorted order; selecting the median first
+        // leaves both halves partitioned for the other two
+        System.arraycopy(scratch, 0, scratch, N_BUCKETS, N_BUCKETS);
+        int qutil_2 = select(scratch, N_BUCKETS, 2 * N_BUCKETS, N_BUCKETS + N_BUCKETS / 2);
+        int qutil_1 = select(scratch, N_BUCKETS, N_BUCKETS + N_BUCKETS / 2, N_BUCKETS + N_BUCKETS / 4);
+        int qutil_3 = select(scratch, N_BUCKETS + N_BUCKETS / 2 + 1, 2 * N_BUCKETS, N_BUCKETS + 3 * N_BUCKETS / 4);
+
+        //encode, 32 buckets per word:
+        long word = 0;
+        for (i = 0; i < N_BUCKETS; i++) {
+            int bi = scratch[i];
+            // ensure 0→0:
+            word = word << 2 | (bi <= qutil_1 ? 0 : bi >= qutil_3 ? 3 : bi >= qutil_2 ? 2 : 1);
+
+            if (i % 32 == 31) {
+                code[offset + i / 32] = word;
+                word = 0;
+            }
+        }
+    }
+
+    /**
+     * Moves the element that belongs to position <code>k</code> in sorted order there, with no larger
+     * element before it and no smaller one after it within <code>values[from, to)</code>.
+     *
+     * @return The element at position <code>k</code>.
+     */
+    private static int select(int[] values, int from, int to, int k) {
+        while (to - from > 1) {
+            int pivot = values[(from + to) >>> 1];
+            int i = from, j = to - 1;
+
+            while (i <= j) {
+                while (values[i] < pivot)
+                    i++;
+                while (values[j] > pivot)
+                    j--;
+                if (i <= j) {
+                    int swap = values[i];
+                    values[i++] = values[j];
+                    values[j--] = swap;
+                }
+            }
+
+            // values[from, j] <= pivot, values(j, i) == pivot, values[i, to) >= pivot
+            if (k <= j)
+                to = j + 1;
+            else if (k >= i)
+                from = i;
+            else
+                break;
+        }
+
+        return values[k];
+    }
+
+    /**
+     * Pearson's hash function of three bytes.
+     *
+     * @return Hash value in range 0..N_BUCKETS - 1.
+     */
+    private static int pearson3b(int pc0, int pc1, int pc2) {
+        return (PEARSON_TABLE[PEARSON_TABLE[pc0 & 255] ^ (pc1 & 255)] ^ (pc2 & 255)) % N_BUCKETS;
+    }
+
+    /**
+     * "Random" permutation of bytes, for use in Pearson's hash function.
+     */
+    private final static int[] PEARSON_TABLE = {
+        98, 6, 85, 150, 36, 23, 112, 164, 135, 207, 169, 5, 26, 64, 165, 219, //  1
+        61, 20, 68, 89, 130, 63, 52, 102, 24, 229, 132, 245, 80, 216, 195, 115, //  2
+        90, 168, 156, 203, 177, 120, 2, 190, 188, 7, 100, 185, 174, 243, 162, 10, //  3
+        237, 18, 253, 225, 8, 208, 172, 244, 255, 126, 101, 79, 145, 235, 228, 121, //  4
+        123, 251, 67, 250, 161, 0, 107, 97, 241, 111, 181, 82, 249, 33, 69, 55, //  5
+        59, 153, 29, 9, 213, 167, 84, 93, 30, 46, 94, 75, 151, 114, 73, 222, //  6
+        197, 96, 210, 45, 16, 227, 248, 202, 51, 152, 252, 125, 81, 206, 215, 186, //  7
+        39, 158, 178, 187, 131, 136, 1, 49, 50, 17, 141, 91, 47, 129, 60, 99, //  8
+        154, 35, 86, 171, 105, 34, 38, 200, 147, 58, 77, 118, 173, 246, 76, 254, //  9
+        133, 232, 196, 144, 198, 124, 53, 4, 108, 74, 223, 234, 134, 230, 157, 139, // 10
+        189, 205, 199, 128, 176, 19, 211, 236, 127, 192, 231, 70, 233, 88, 146, 44, // 11
+        183, 201, 22, 83, 13, 214, 116, 109, 159, 32, 95, 226, 140, 220, 57, 12, // 12
+        221, 31, 209, 182, 143, 92, 149, 184, 148, 62, 113, 65, 37, 27, 106, 166, // 13
+        3, 14, 204, 72, 21, 41, 56, 66, 28, 193, 40, 217, 25, 54, 179, 117, // 14
+        238, 87, 240, 155, 180, 170, 242, 212, 191, 163, 78, 218, 137, 194, 175, 110, // 15
+        43, 119, 224, 71, 122, 142, 42, 160, 104, 48, 247, 103, 15, 11, 138, 239  // 16
+    };
+}
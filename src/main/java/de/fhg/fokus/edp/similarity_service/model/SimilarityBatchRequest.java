@@ -0,0 +1,63 @@
+package de.fhg.fokus.edp.similarity_service.model;
+
+import java.util.List;
+
+public class SimilarityBatchRequest {
+
+    private List<String> datasetIds;
+    private int limit;
+    private int minDistance;
+    private int maxDistance;
+
+    public SimilarityBatchRequest() {
+    }
+
+    public SimilarityBatchRequest(List<String> datasetIds, int limit, int minDistance, int maxDistance) {
+        this.datasetIds = datasetIds;
+        this.limit = limit;
+        this.minDistance = minDistance;
+        this.maxDistance = maxDistance;
+    }
+
+    public List<String> getDatasetIds() {
+        return datasetIds;
+    }
+
+    public void setDatasetIds(List<String> datasetIds) {
+        this.datasetIds = datasetIds;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    public int getMinDistance() {
+        return minDistance;
+    }
+
+    public void setMinDistance(int minDistance) {
+        this.minDistance = minDistance;
+    }
+
+    public int getMaxDistance() {
+        return maxDistance;
+    }
+
+    public void setMaxDistance(int maxDistance) {
+        this.maxDistance = maxDistance;
+    }
+
+    @Override
+    public String toString() {
+        return "SimilarityBatchRequest{" +
+            "datasetIds=" + datasetIds +
+            ", limit=" + limit +
+            ", minDistance=" + minDistance +
+            ", maxDistance=" + maxDistance +
+            '}';
+    }
+}
@@ -4,13 +4,17 @@ public class SimilarityRequest {
 
     private String datasetId;
     private int limit;
+    private int minDistance;
+    private int maxDistance;
 
     public SimilarityRequest() {
     }
 
-    public SimilarityRequest(String datasetId, int limit) {
+    public SimilarityRequest(String datasetId, int limit, int minDistance, int maxDistance) {
         this.datasetId = datasetId;
         this.limit = limit;
+        this.minDistance = minDistance;
+        this.maxDistance = maxDistance;
     }
 
     public String getDatasetId() {
@@ -29,11 +33,29 @@ public class SimilarityRequest {
         this.limit = limit;
     }
 
+    public int getMinDistance() {
+        return minDistance;
+    }
+
+    public void setMinDistance(int minDistance) {
+        this.minDistance = minDistance;
+    }
+
+    public int getMaxDistance() {
+        return maxDistance;
+    }
+
+    public void setMaxDistance(int maxDistance) {
+        this.maxDistance = maxDistance;
+    }
+
     @Override
     public String toString() {
         return "SimilarityRequest{" +
             "datasetId='" + datasetId + '\'' +
             ", limit=" + limit +
+            ", minDistance=" + minDistance +
+            ", maxDistance=" + maxDistance +
             '}';
     }
 }
@@ -0,0 +1,34 @@
+package de.fhg.fokus.edp.similarity_service;
+
+import io.vertx.core.Future;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that requests failing to start release their slots instead of stalling the crawl.
+ */
+public class CrawlSchedulerTest {
+
+    @Test
+    public void requestFailingToStartReleasesSlot() {
+        CrawlScheduler scheduler = new CrawlScheduler(1);
+
+        Future<String> failed = scheduler.submit("DEU", () -> {
+            throw new IllegalStateException("no query");
+        });
+        Future<String> pending = Future.future();
+        Future<String> next = scheduler.submit("DEU", () -> pending);
+
+        assertTrue(failed.failed());
+        assertEquals("no query", failed.cause().getMessage());
+        assertEquals(1, (int) scheduler.status().getInteger("inFlight"));
+
+        pending.complete("page");
+        assertEquals("page", next.result());
+        assertEquals(0, (int) scheduler.status().getInteger("inFlight"));
+        assertEquals(1L, (long) scheduler.status().getLong("failedRequests"));
+        assertEquals(1L, (long) scheduler.status().getLong("completedRequests"));
+    }
+}
@@ -0,0 +1,98 @@
+package de.fhg.fokus.edp.similarity_service;
+
+import org.junit.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the SWAR kernel yields the same distances as the lookup table, exact and bounded.
+ */
+public class DistanceKernelTest {
+
+    private static final long ALL_BUCKETS = -1L;
+    // every bucket of pattern "01" or "10"
+    private static final long PATTERN_01 = 0x5555555555555555L;
+    private static final long PATTERN_10 = 0xAAAAAAAAAAAAAAAAL;
+
+    @Test
+    public void equalFingerprintsHaveNoDistance() {
+        assertParity(0L, 0L);
+        assertEquals(0, DistanceKernel.SWAR.distance(0L, 0L));
+    }
+
+    @Test
+    public void maximallyDifferentBuckets() {
+        assertParity(ALL_BUCKETS, ALL_BUCKETS);
+        assertParity(PATTERN_01, PATTERN_01);
+        assertParity(PATTERN_10, PATTERN_10);
+        assertParity(PATTERN_10, 0L);
+        assertParity(0L, PATTERN_10);
+
+        // all 64 buckets differ
+        assertEquals(64, DistanceKernel.SWAR.distance(ALL_BUCKETS, ALL_BUCKETS));
+        // every "10" bucket weighs 10 units instead of 8
+        assertEquals(80, DistanceKernel.SWAR.distance(PATTERN_10, PATTERN_10));
+    }
+
+    @Test
+    public void penaltyOfEveryFourthPattern10() {
+        for (int hiPatterns = 0; hiPatterns <= 32; hiPatterns++) {
+            for (int loPatterns = 0; loPatterns <= 32; loPatterns++) {
+                long xorHi = patterns10(hiPatterns);
+                long xorLo = patterns10(loPatterns);
+                assertParity(xorHi, xorLo);
+                assertEquals(hiPatterns + loPatterns + (hiPatterns + loPatterns) / 4,
+                    DistanceKernel.SWAR.distance(xorHi, xorLo));
+            }
+        }
+
+        // 3 "10" buckets add no unit yet; a fourth one in either word does, a bucket of another pattern does not
+        assertEquals(3, DistanceKernel.SWAR.distance(patterns10(3), 0L));
+        assertEquals(5, DistanceKernel.SWAR.distance(patterns10(3), patterns10(1)));
+        assertEquals(4, DistanceKernel.SWAR.distance(patterns10(3), 1L));
+    }
+
+    @Test
+    public void randomFingerprints() {
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < 200_000; i++)
+            assertParity(random.nextLong(), random.nextLong());
+    }
+
+    @Test
+    public void randomFingerprintsWithFewDifferences() {
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < 200_000; i++)
+            assertParity(random.nextLong() & random.nextLong() & random.nextLong(),
+                random.nextLong() & random.nextLong() & random.nextLong());
+    }
+
+    /**
+     * @return Word with the lowest <code>count</code> buckets of pattern "10".
+     */
+    private static long patterns10(int count) {
+        return count == 32 ? PATTERN_10 : PATTERN_10 & ((1L << 2 * count) - 1);
+    }
+
+    private static void assertParity(long xorHi, long xorLo) {
+        int expected = DistanceKernel.TABLE.distance(xorHi, xorLo);
+        String fingerprint = Long.toHexString(xorHi) + " " + Long.toHexString(xorLo);
+        assertEquals(fingerprint, expected, DistanceKernel.SWAR.distance(xorHi, xorLo));
+
+        for (int bound = 0; bound <= 80; bound += 3) {
+            int table = DistanceKernel.TABLE.distance(xorHi, xorLo, bound);
+            int swar = DistanceKernel.SWAR.distance(xorHi, xorLo, bound);
+
+            if (expected <= bound) {
+                assertEquals(fingerprint + " within " + bound, expected, table);
+                assertEquals(fingerprint + " within " + bound, expected, swar);
+            } else {
+                assertTrue(fingerprint + " beyond " + bound, table > bound && table <= expected);
+                assertTrue(fingerprint + " beyond " + bound, swar > bound && swar <= expected);
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package de.fhg.fokus.edp.similarity_service;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that binary fingerprint files are read back as written, and that corrupt ones fail as I/O errors.
+ */
+public class FingerprintFileTest {
+
+    private static final List<String> URIS = Arrays.asList(
+        "https://europeandataportal.eu/set/data/a", "https://europeandataportal.eu/set/data/bb", "https://europeandataportal.eu/set/data/ccc");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsRecordsAsWritten() throws IOException {
+        Path file = write();
+
+        List<String> read = new ArrayList<>();
+        FingerprintFile.read(file, (uri, hi, lo, textLength) -> {
+            int i = read.size();
+            assertEquals(i, hi);
+            assertEquals(-i, lo);
+            assertEquals(10 * i, textLength);
+            read.add(uri);
+        });
+
+        assertEquals(URIS, read);
+    }
+
+    @Test
+    public void uriOffsetBeyondHeap() throws IOException {
+        Path file = write();
+        setUriOffset(file, 2, Integer.MAX_VALUE);
+        assertCorrupt(file);
+    }
+
+    @Test
+    public void negativeUriOffset() throws IOException {
+        Path file = write();
+        setUriOffset(file, 0, -1);
+        assertCorrupt(file);
+    }
+
+    @Test
+    public void uriOffsetsOutOfOrder() throws IOException {
+        Path file = write();
+        setUriOffset(file, 1, 100);
+        assertCorrupt(file);
+    }
+
+    @Test
+    public void recordCountBeyondFile() throws IOException {
+        Path file = write();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, Integer.MAX_VALUE), 8);
+        }
+        assertCorrupt(file);
+    }
+
+    private Path write() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("DEU_test.fp");
+        try (FingerprintFile.Appender appender = FingerprintFile.appender(file)) {
+            for (int i = 0; i < URIS.size(); i++)
+                appender.append(URIS.get(i), i, -i, 10 * i);
+        }
+        FingerprintFile.assemble(file);
+        return file;
+    }
+
+    private static void setUriOffset(Path file, int record, int offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, offset),
+                FingerprintFile.HEADER_SIZE + record * FingerprintFile.RECORD_SIZE + 20);
+        }
+    }
+
+    private static void assertCorrupt(Path file) {
+        try {
+            FingerprintFile.read(file, (uri, hi, lo, textLength) -> {
+            });
+            fail("Corrupt file read");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
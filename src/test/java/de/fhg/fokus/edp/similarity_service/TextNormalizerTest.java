@@ -0,0 +1,133 @@
+package de.fhg.fokus.edp.similarity_service;
+
+import org.junit.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the char buffer normalizer yields the same text as the regex, lowercase and replaceEach route.
+ */
+public class TextNormalizerTest {
+
+    private static final String[] TOKENS = {
+        "it", "there", "if", "of", "and", "so", "yet", "or", "moreover", "also", "too", "thus", "hence",
+        "therefore", "furthermore", "likewise", "a", "an", "the", "other", "another", "some", "any", "its",
+        "their", "such", "all", "every", "each", "is", "are", "be", "was", "were", "been", "do", "does", "did",
+        "will", "would", "la", "der", "y", "de",
+        "AND", "The", "An", "ThE", "Ander", "band", "theirs", "island", "Daten", "Straße", "Ölpreis",
+        "Île-de-France", "İstanbul", "ΟΔΟΣ", "Σ", "οδός", "Москва", "данные", "数据", "😀",
+        "𐐀", "census", "water-quality", "2019", "x86_64", "e.g.", "\"quoted\"", "'single'",
+        "«guillemets»", "„Anführung“", "(and)", "[an]", "{the}", "a.n.d", "a\"n\"d", "Ǆ", "ǅ", "ﬁ", "µ"
+    };
+
+    private static final String[] SEPARATORS = {" ", "", "  ", ", ", ". ", "-", "\"", "'", "\t", "\n", "/"};
+
+    @Test
+    public void overlappingStopWords() {
+        assertParity("a an and anda andan aand ana nda");
+        assertParity("anand ananand and and andand");
+        assertParity("theirs there their the th e");
+        assertParity("another other an other ano ther");
+        assertParity("isare wasbeen doesdo willwould");
+    }
+
+    @Test
+    public void stopWordsAtEdges() {
+        assertParity("and");
+        assertParity("the water");
+        assertParity("water the");
+        assertParity("and the a an of");
+        assertParity("andtheaanof");
+        assertParity("a");
+        assertParity("");
+        assertParity(" ");
+    }
+
+    @Test
+    public void specialCasing() {
+        assertParity("İstanbul IS İS");
+        assertParity("ΟΔΟΣ ΟΔΟΣ. Σ ΑΣ ΣΑ");
+        assertParity("dotted İ and sigma Σ, together: İΣ");
+        assertParity("ǄǅǆẞΩKÅ");
+    }
+
+    @Test
+    public void unpairedSurrogates() {
+        assertParity("\uD83D");
+        assertParity("\uDE00");
+        assertParity("\uD83D.\uDE00 and");
+        assertParity("the \uDE00\uD83D end");
+        assertParity("😀\uD83D");
+    }
+
+    @Test
+    public void quotesAndPunctuation() {
+        assertParity("\"The\" \"and\" 'an' a\"n\"d a'n'd");
+        assertParity("!\"#$%&'()*+,-./:;<=>?@[\\]^_`{|}~");
+        assertParity("a.n.d t,h,e i-s th\"e");
+        assertParity("«The» „and“ ‹an› ‘the’ “a”");
+    }
+
+    @Test
+    public void appendedTextsAreNormalizedSeparately() {
+        TextNormalizer normalizer = TextNormalizer.forCurrentThread();
+        normalizer.reset();
+        normalizer.append("Water an");
+        normalizer.appendRaw(" ");
+        normalizer.append("d the İsland");
+
+        assertEquals(TextNormalizer.legacyNormalize("Water an") + " " + TextNormalizer.legacyNormalize("d the İsland"),
+            new String(normalizer.text(), 0, normalizer.length()));
+    }
+
+    @Test
+    public void randomTokens() {
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < 20_000; i++) {
+            StringBuilder input = new StringBuilder();
+            int tokens = random.nextInt(30);
+            for (int k = 0; k < tokens; k++) {
+                input.append(TOKENS[random.nextInt(TOKENS.length)]);
+                input.append(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+            }
+            assertParity(input.toString());
+        }
+    }
+
+    @Test
+    public void randomChars() {
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < 20_000; i++) {
+            StringBuilder input = new StringBuilder();
+            int chars = random.nextInt(60);
+            for (int k = 0; k < chars; k++) {
+                switch (random.nextInt(4)) {
+                    case 0:
+                        input.append((char) random.nextInt(32, 128));
+                        break;
+                    case 1:
+                        input.append("andtheoisy".charAt(random.nextInt(10)));
+                        break;
+                    case 2:
+                        input.append((char) random.nextInt(128, 0x800));
+                        break;
+                    default:
+                        input.appendCodePoint(random.nextInt(0x800, 0x20000));
+                }
+            }
+            assertParity(input.toString());
+        }
+    }
+
+    private static void assertParity(String input) {
+        TextNormalizer normalizer = TextNormalizer.forCurrentThread();
+        normalizer.reset();
+        int appended = normalizer.append(input);
+
+        String expected = TextNormalizer.legacyNormalize(input);
+        assertEquals(input, expected, new String(normalizer.text(), 0, normalizer.length()));
+        assertEquals(input, expected.length(), appended);
+    }
+}
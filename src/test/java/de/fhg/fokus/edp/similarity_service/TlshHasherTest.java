@@ -0,0 +1,217 @@
+package de.fhg.fokus.edp.similarity_service;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the hasher yields the same codes as the former TLSHfingerprint of the FingerprintVerticle,
+ * encoded as hex digits and parsed into two words.
+ */
+public class TlshHasherTest {
+
+    private static final String HEX_DIGITS = "0123456789ABCDEF";
+
+    @Test
+    public void shortestTexts() {
+        assertParity("abcde");
+        assertParity("aaaaa");
+        assertParity("    a");
+        assertParity("\u0000\u0000\u0000\u0000\u0000");
+        assertParity("数据数据数");
+
+        SplittableRandom random = new SplittableRandom(5);
+        for (int i = 0; i < 10_000; i++)
+            assertParity(randomText(random, TlshHasher.MIN_LENGTH + random.nextInt(4)));
+    }
+
+    @Test
+    public void equalBucketCounts() {
+        // few windows leave most buckets empty, repeated windows pile up in the same buckets
+        assertParity("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa");
+        assertParity("abababababababababababababababababababab");
+        assertParity("abcabcabcabcabcabcabcabcabcabcabcabcabcabcabcabc");
+        assertParity("census census census census census census");
+
+        SplittableRandom random = new SplittableRandom(11);
+        for (int i = 0; i < 10_000; i++) {
+            StringBuilder text = new StringBuilder();
+            String unit = randomText(random, 1 + random.nextInt(4));
+            int repeats = (TlshHasher.MIN_LENGTH + unit.length() - 1) / unit.length() + random.nextInt(20);
+            for (int k = 0; k < repeats; k++)
+                text.append(unit);
+            assertParity(text.toString());
+        }
+    }
+
+    @Test
+    public void randomTexts() {
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < 20_000; i++)
+            assertParity(randomText(random, TlshHasher.MIN_LENGTH + random.nextInt(2000)));
+    }
+
+    @Test
+    public void longTexts() {
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < 20; i++)
+            assertParity(randomText(random, 100_000 + random.nextInt(1_000_000)));
+    }
+
+    @Test
+    public void onlyLengthCharsAreHashed() {
+        char[] text = "water quality of rivers and lakes".toCharArray();
+        char[] padded = Arrays.copyOf(text, text.length + 100);
+        Arrays.fill(padded, text.length, padded.length, 'x');
+
+        long[] expected = new long[2], actual = new long[4];
+        TlshHasher.hash(text, text.length, expected, 0);
+        TlshHasher.hash(padded, text.length, actual, 2, new int[TlshHasher.SCRATCH_SIZE]);
+
+        assertEquals(expected[0], actual[2]);
+        assertEquals(expected[1], actual[3]);
+    }
+
+    private static String randomText(SplittableRandom random, int length) {
+        char[] text = new char[length];
+        for (int i = 0; i < length; i++) {
+            switch (random.nextInt(3)) {
+                case 0:
+                    text[i] = "abcdefghijklmnopqrstuvwxyz    '".charAt(random.nextInt(31));
+                    break;
+                case 1:
+                    text[i] = (char) random.nextInt(32, 256);
+                    break;
+                default:
+                    text[i] = (char) random.nextInt(0x10000);
+            }
+        }
+        return new String(text);
+    }
+
+    private static void assertParity(String text) {
+        String hex = legacyHex(text);
+
+        long[] code = new long[2];
+        TlshHasher.hash(text.toCharArray(), text.length(), code, 0);
+
+        assertEquals(hex, Long.parseUnsignedLong(hex.substring(0, 16), 16), code[0]);
+        assertEquals(hex, Long.parseUnsignedLong(hex.substring(16), 16), code[1]);
+    }
+
+    /**
+     * The code as the FingerprintVerticle used to write it: two buckets per hex digit.
+     */
+    private static String legacyHex(String text) {
+        int[] fingerprint = new int[LegacyTlsh.N_BUCKETS];
+        new LegacyTlsh().TLSHfingerprint(text, fingerprint);
+
+        StringBuilder hex = new StringBuilder();
+        for (int i = 0; i < LegacyTlsh.N_BUCKETS; i += 2)
+            hex.append(HEX_DIGITS.charAt(fingerprint[i] * 4 + fingerprint[i + 1]));
+        return hex.toString();
+    }
+
+    /**
+     * TLSHfingerprint as it was in the FingerprintVerticle, sorting the bucket counts for the quartiles.
+     */
+    private static final class LegacyTlsh {
+
+        private static final int N_BUCKETS = 64;
+
+        private int[] bucketCount = new int[N_BUCKETS], tmpaux = new int[N_BUCKETS];
+
+        private void TLSHfingerprint(String fingerprintText, int[] fingerprint) throws IllegalArgumentException {
+            int i;
+
+            //reset counters:
+            for (i = 0; i < N_BUCKETS; i++)
+                bucketCount[i] = 0;
+
+            //initialize sliding 5-char window:
+            int c0 = (int) fingerprintText.charAt(0), c1 = (int) fingerprintText.charAt(1), c2 = (int) fingerprintText.charAt(2),
+                c3 = (int) fingerprintText.charAt(3), c4 = (int) fingerprintText.charAt(4);
+
+            i = 5;
+
+            while (true) {
+                bucketCount[pearson3b(c0, c1, c2)]++;
+                bucketCount[pearson3b(c0, c3, c1)]++;
+                bucketCount[pearson3b(c1, c0, c4)]++;
+                bucketCount[pearson3b(c3, c2, c0)]++;
+                bucketCount[pearson3b(c4, c0, c2)]++;
+                bucketCount[pearson3b(c3, c4, c0)]++;
+
+                //exit when end of string reached:
+                if (i >= fingerprintText.length())
+                    break;
+
+                // slide window forward:
+                c0 = c1;
+                c1 = c2;
+                c2 = c3;
+                c3 = c4;
+                c4 = (int) fingerprintText.charAt(i);
+                i++;
+            }
+
+            // do remaining 4 triples:
+            bucketCount[pearson3b(c1, c2, c3)]++;
+            bucketCount[pearson3b(c1, c4, c2)]++;
+            bucketCount[pearson3b(c4, c3, c1)]++;
+            bucketCount[pearson3b(c2, c3, c4)]++;
+
+            //sort bucketCount, get quartils:
+            System.arraycopy(bucketCount, 0, tmpaux, 0, bucketCount.length);
+            Arrays.sort(tmpaux);
+
+            int qutil_1 = tmpaux[(tmpaux.length) / 4],
+                qutil_2 = tmpaux[(tmpaux.length) / 2],
+                qutil_3 = tmpaux[(3 * tmpaux.length) / 4];
+
+            if (qutil_1 < 0 || qutil_1 > qutil_2 || qutil_2 > qutil_3)
+                throw new IllegalArgumentException("Failed to generate TLSH fingerprint. Quartiles inconsistent.");
+
+            //encode :
+            for (i = 0; i < N_BUCKETS; i++) {
+                int bi = bucketCount[i];
+                // ensure 0→0:
+                fingerprint[i] = (bi <= qutil_1 ? 0 : bi >= qutil_3 ? 3 : bi >= qutil_2 ? 2 : 1);
+            }
+        }
+
+        /**
+         * Pearson's hash function of three bytes.
+         *
+         * @return Hash value in range 0..N_BUCKETS - 1.
+         */
+        private int pearson3b(int pc0, int pc1, int pc2) {
+            return (PEARSON_TABLE[PEARSON_TABLE[pc0 & 255] ^ (pc1 & 255)] ^ (pc2 & 255)) % N_BUCKETS;
+        }
+
+        /**
+         * "Random" permutation of bytes, for use in Pearson's hash function.
+         */
+        private final static int[] PEARSON_TABLE = {
+            98, 6, 85, 150, 36, 23, 112, 164, 135, 207, 169, 5, 26, 64, 165, 219, //  1
+            61, 20, 68, 89, 130, 63, 52, 102, 24, 229, 132, 245, 80, 216, 195, 115, //  2
+            90, 168, 156, 203, 177, 120, 2, 190, 188, 7, 100, 185, 174, 243, 162, 10, //  3
+            237, 18, 253, 225, 8, 208, 172, 244, 255, 126, 101, 79, 145, 235, 228, 121, //  4
+            123, 251, 67, 250, 161, 0, 107, 97, 241, 111, 181, 82, 249, 33, 69, 55, //  5
+            59, 153, 29, 9, 213, 167, 84, 93, 30, 46, 94, 75, 151, 114, 73, 222, //  6
+            197, 96, 210, 45, 16, 227, 248, 202, 51, 152, 252, 125, 81, 206, 215, 186, //  7
+            39, 158, 178, 187, 131, 136, 1, 49, 50, 17, 141, 91, 47, 129, 60, 99, //  8
+            154, 35, 86, 171, 105, 34, 38, 200, 147, 58, 77, 118, 173, 246, 76, 254, //  9
+            133, 232, 196, 144, 198, 124, 53, 4, 108, 74, 223, 234, 134, 230, 157, 139, // 10
+            189, 205, 199, 128, 176, 19, 211, 236, 127, 192, 231, 70, 233, 88, 146, 44, // 11
+            183, 201, 22, 83, 13, 214, 116, 109, 159, 32, 95, 226, 140, 220, 57, 12, // 12
+            221, 31, 209, 182, 143, 92, 149, 184, 148, 62, 113, 65, 37, 27, 106, 166, // 13
+            3, 14, 204, 72, 21, 41, 56, 66, 28, 193, 40, 217, 25, 54, 179, 117, // 14
+            238, 87, 240, 155, 180, 170, 242, 212, 191, 163, 78, 218, 137, 194, 175, 110, // 15
+            43, 119, 224, 71, 122, 142, 42, 160, 104, 48, 247, 103, 15, 11, 138, 239  // 16
+        };
+    }
+}